@@ -0,0 +1,83 @@
+package me.gruzdeva;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Synthetic response bodies of about the requested size, shaped like the real services' responses.
+ */
+public class Payloads {
+    public final static String SHAPE_NYTIMES = "nytimes";
+    public final static String SHAPE_OBJECT = "object";
+    public final static String SHAPE_ARRAY = "array";
+
+    private final static int ARTICLE_BYTES = 420;
+
+    /**
+     * A NYTimes most viewed list, {"status":"OK","results":[...]}. Articles whose index is below shift
+     * get a different title, so two lists with different shifts differ in content.
+     */
+    public static byte[] nyTimes(int kilobytes, int shift) {
+        int articles = articleCount(kilobytes);
+        StringBuilder json = new StringBuilder(kilobytes * 1024 + 256).append("{\"status\":\"OK\",\"results\":[");
+        for (int i = 0; i < articles; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(100000 + i)
+                    .append(",\"url\":\"https://www.nytimes.com/2024/01/01/world/article-").append(i).append(".html\"")
+                    .append(",\"published_date\":\"2024-01-01\",\"section\":\"World\"")
+                    .append(",\"byline\":\"By Jane Doe, John Roe\"")
+                    .append(",\"title\":\"").append(i < shift ? "Updated: " : "").append("Title of article ").append(i)
+                    .append("\",\"abstract\":\"An abstract with a comma, a \\\"quote\\\" and some more words to fill ")
+                    .append("the line like the real abstracts do.\"")
+                    .append(",\"des_facet\":[\"Politics\",\"Economy\"],\"media\":[]}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static int articleCount(int kilobytes) {
+        return Math.max(1, kilobytes * 1024 / ARTICLE_BYTES);
+    }
+
+    /**
+     * A single object like the CatFacts response, with a fact of the requested size.
+     */
+    public static byte[] object(int kilobytes) {
+        String fact = "Cats sleep, purr and \"plan\", all day long. ".repeat(Math.max(1, kilobytes * 1024 / 45));
+        return ("{\"fact\":\"" + fact.replace("\"", "\\\"") + "\",\"length\":" + fact.length() + "}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An array of flat objects of mixed value types.
+     */
+    public static byte[] array(int kilobytes) {
+        int rows = Math.max(1, kilobytes * 1024 / 120);
+        StringBuilder json = new StringBuilder(kilobytes * 1024 + 64).append('[');
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i).append(",\"city\":\"City ").append(i % 50)
+                    .append("\",\"temperature\":").append(i % 40 - 5).append(".5,\"observed\":true")
+                    .append(",\"description\":\"Partly cloudy, light wind\",\"tags\":[\"a\",\"b\"]}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] ofShape(String shape, int kilobytes) {
+        return switch (shape) {
+            case SHAPE_NYTIMES -> nyTimes(kilobytes, 0);
+            case SHAPE_OBJECT -> object(kilobytes);
+            case SHAPE_ARRAY -> array(kilobytes);
+            default -> throw new IllegalArgumentException("Unknown payload shape: " + shape);
+        };
+    }
+
+    /**
+     * Service the shape is processed as: NYTimes gets its projected columns, the others the generic flattening.
+     */
+    public static String serviceOf(String shape) {
+        return SHAPE_NYTIMES.equals(shape) ? "NYTimes" : SHAPE_OBJECT.equals(shape) ? "CatFacts" : "Weather";
+    }
+}
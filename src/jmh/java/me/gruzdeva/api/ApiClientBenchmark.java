@@ -0,0 +1,71 @@
+package me.gruzdeva.api;
+
+import com.sun.net.httpserver.HttpServer;
+import me.gruzdeva.Payloads;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request through the shared pooled clients against an in-process HTTP stub, so the client side
+ * (connection reuse, reading the body, bookkeeping) is measured without the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiClientBenchmark {
+    private final static String SERVICE_NAME = "Benchmark";
+
+    static {
+        // the stub writes headers and body separately, without TCP_NODELAY every call waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @Param({"1", "16", "128"})
+    int payloadKb;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        byte[] body = Payloads.nyTimes(payloadKb, 0);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/svc/mostpopular/v2/viewed/1.json";
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public ApiPayload callApi() throws Exception {
+        return ApiClient.callApi(SERVICE_NAME, url);
+    }
+
+    @Benchmark
+    public ApiPayload callApiAsync() {
+        return ApiClient.callApiAsync(SERVICE_NAME, url).join();
+    }
+}
@@ -0,0 +1,55 @@
+package me.gruzdeva.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.gruzdeva.Payloads;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON round trip of a NYTimes poll: parse the response, diff it against the previous list
+ * and serialize the change events. The list alternates between two versions, so every poll has changes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NYTimesDiffBenchmark {
+
+    @Param({"1", "16", "128"})
+    int payloadKb;
+
+    // percentage of articles that change between two polls
+    @Param({"10", "100"})
+    int changedPercent;
+
+    private final ArticleIndex index = new ArticleIndex();
+    private final byte[][] bodies = new byte[2][];
+    private int poll;
+
+    @Setup
+    public void createPayloads() {
+        int articles = Payloads.articleCount(payloadKb);
+        bodies[0] = Payloads.nyTimes(payloadKb, 0);
+        bodies[1] = Payloads.nyTimes(payloadKb, articles * changedPercent / 100);
+    }
+
+    @Benchmark
+    public byte[] diff() throws IOException {
+        ApiPayload payload = new ApiPayload(ApiClient.SERVICE_NYTIMES, Instant.EPOCH, 0, bodies[poll++ & 1]);
+        JsonNode results = payload.getTree().get("results");
+        ArticleIndex.Changes diff = index.diff((ArrayNode) results);
+        diff.commit();
+        ArrayNode changes = diff.getEvents();
+        ObjectNode body = ApiClient.objectMapper.createObjectNode();
+        body.put("period", 1);
+        body.set("changes", changes);
+        return ApiClient.objectMapper.writeValueAsBytes(body);
+    }
+}
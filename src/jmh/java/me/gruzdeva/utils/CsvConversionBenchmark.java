@@ -0,0 +1,73 @@
+package me.gruzdeva.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.gruzdeva.Payloads;
+import me.gruzdeva.api.ApiPayload;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payload to CSV bytes without the writer and the disk: the token based row extraction and field escaping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvConversionBenchmark {
+
+    @Param({Payloads.SHAPE_NYTIMES, Payloads.SHAPE_OBJECT, Payloads.SHAPE_ARRAY})
+    String shape;
+
+    @Param({"1", "16", "128"})
+    int payloadKb;
+
+    private final JsonRowReader rowReader = new JsonRowReader(new ObjectMapper());
+    private final CountingSink out = new CountingSink();
+    private final CsvRowWriter csvWriter = new CsvRowWriter(out, 64 * 1024);
+    private final CsvSchemaRegistry schemas = new CsvSchemaRegistry();
+    private byte[] body;
+    private String serviceName;
+
+    @Setup
+    public void createPayload() {
+        body = Payloads.ofShape(shape, payloadKb);
+        serviceName = Payloads.serviceOf(shape);
+    }
+
+    @Benchmark
+    public long toCsv() throws IOException {
+        out.count = 0;
+        rowReader.read(new ApiPayload(serviceName, Instant.EPOCH, 0, body), schemas.handler(serviceName, csvWriter));
+        csvWriter.flush();
+        return out.count;
+    }
+
+    /**
+     * Counts the bytes instead of keeping them, so only the conversion is measured.
+     */
+    static class CountingSink implements OutputSink {
+        long count;
+
+        @Override
+        public void write(byte[] record) {
+            count += record.length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void force() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package me.gruzdeva.utils;
+
+import me.gruzdeva.Payloads;
+import me.gruzdeva.api.ApiPayload;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A fetched payload to the output file: parsing, conversion to the output format and the writer, disk included.
+ * The output is recreated for every iteration so the files stay small. The sink behind the writer is selected
+ * through the output.sink property, see {@link OutputSinkBenchmark} for the sinks on their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataProcessorBenchmark {
+
+    @Param({"json", "csv", "ndjson", "columnar"})
+    String format;
+
+    @Param({Payloads.SHAPE_NYTIMES, Payloads.SHAPE_OBJECT, Payloads.SHAPE_ARRAY})
+    String shape;
+
+    @Param({"1", "16", "128"})
+    int payloadKb;
+
+    @Param({"channel", "mmap"})
+    String sink;
+
+    private byte[] body;
+    private String serviceName;
+    private Path outDir;
+    private DataProcessor processor;
+
+    @Setup(Level.Trial)
+    public void createPayload() {
+        body = Payloads.ofShape(shape, payloadKb);
+        serviceName = Payloads.serviceOf(shape);
+        // read by DataProcessor when the output is opened, system properties override the config file
+        System.setProperty("output.sink", sink);
+    }
+
+    @Setup(Level.Iteration)
+    public void openOutput() throws IOException {
+        outDir = Files.createTempDirectory("jmh-output");
+        processor = new DataProcessor(format, outDir.toString(), DataProcessor.Layout.SINGLE);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutput() throws IOException {
+        processor.close();
+        try (Stream<Path> files = Files.walk(outDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean process() throws Exception {
+        // a new payload every time, the parsed tree is cached in the payload
+        return processor.process(new ApiPayload(serviceName, Instant.EPOCH, 0, body));
+    }
+}
@@ -0,0 +1,46 @@
+package me.gruzdeva.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escaping of a single CSV field into the byte buffer, including the copy handed to the sink: the common case of a value that needs no quoting, and one that does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeFieldBenchmark {
+
+    @Param({"16", "256"})
+    int length;
+
+    private final CsvConversionBenchmark.CountingSink out = new CsvConversionBenchmark.CountingSink();
+    private final CsvRowWriter csvWriter = new CsvRowWriter(out, 64 * 1024);
+    private String plain;
+    private String quoted;
+
+    @Setup
+    public void createValues() {
+        plain = "a".repeat(length);
+        quoted = "a, \"b\"\n".repeat(Math.max(1, length / 7));
+    }
+
+    @Benchmark
+    public long plain() throws IOException {
+        csvWriter.writeField(plain);
+        csvWriter.flush();
+        return out.count;
+    }
+
+    @Benchmark
+    public long quoted() throws IOException {
+        csvWriter.writeField(quoted);
+        csvWriter.flush();
+        return out.count;
+    }
+}
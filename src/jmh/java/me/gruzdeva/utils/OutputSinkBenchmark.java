@@ -0,0 +1,70 @@
+package me.gruzdeva.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending one record to the output file, without the writer thread: the channel sink, the memory-mapped sink
+ * and, as the baseline, Files.writeString with APPEND, which opens and closes the file for every record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputSinkBenchmark {
+    private final static long MMAP_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    @Param({"writeString", "channel", "mmap"})
+    String sink;
+
+    @Param({"1", "16", "128"})
+    int recordKb;
+
+    private String text;
+    private byte[] record;
+    private Path file;
+    private OutputSink outputSink;
+
+    @Setup(Level.Trial)
+    public void createRecord() {
+        text = "x".repeat(recordKb * 1024 - 1) + "\n";
+        record = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Setup(Level.Iteration)
+    public void openOutput() throws IOException {
+        file = Files.createTempFile("jmh-sink", ".out");
+        outputSink = switch (sink) {
+            case "channel" -> new ChannelSink(file);
+            case "mmap" -> new MappedSink(file, MMAP_CHUNK_SIZE);
+            default -> null;
+        };
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutput() throws IOException {
+        if (outputSink != null) {
+            outputSink.close();
+        }
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        if (outputSink == null) {
+            Files.writeString(file, text, StandardOpenOption.APPEND);
+        } else {
+            outputSink.write(record);
+            // the record is visible to readers of the file after this, no fsync
+            outputSink.flush();
+        }
+    }
+}
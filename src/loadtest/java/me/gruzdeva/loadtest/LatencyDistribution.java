@@ -0,0 +1,67 @@
+package me.gruzdeva.loadtest;
+
+import java.util.Random;
+
+/**
+ * Response delay of the mock server, parsed from one of:
+ * <ul>
+ *     <li>{@code none}</li>
+ *     <li>{@code fixed:<ms>}</li>
+ *     <li>{@code uniform:<min ms>:<max ms>}</li>
+ *     <li>{@code exponential:<mean ms>}</li>
+ *     <li>{@code lognormal:<median ms>:<p99 ms>} - a long tail like real services have</li>
+ * </ul>
+ */
+abstract class LatencyDistribution {
+    private final static double Z_99 = 2.326;
+
+    abstract long sampleMillis(Random random);
+
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().toLowerCase().split(":");
+        try {
+            switch (parts[0]) {
+                case "none":
+                    return fixed(0);
+                case "fixed":
+                    return fixed(Long.parseLong(parts[1]));
+                case "uniform": {
+                    long min = Long.parseLong(parts[1]);
+                    long max = Long.parseLong(parts[2]);
+                    return of(random -> min + (long) (random.nextDouble() * (max - min + 1)));
+                }
+                case "exponential": {
+                    double mean = Double.parseDouble(parts[1]);
+                    return of(random -> (long) (-mean * Math.log(1 - random.nextDouble())));
+                }
+                case "lognormal": {
+                    double median = Double.parseDouble(parts[1]);
+                    double sigma = Math.log(Double.parseDouble(parts[2]) / median) / Z_99;
+                    return of(random -> (long) (median * Math.exp(sigma * random.nextGaussian())));
+                }
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+        }
+        throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+    }
+
+    private static LatencyDistribution fixed(long millis) {
+        return of(random -> millis);
+    }
+
+    private interface Sampler {
+        long sample(Random random);
+    }
+
+    private static LatencyDistribution of(Sampler sampler) {
+        return new LatencyDistribution() {
+            @Override
+            long sampleMillis(Random random) {
+                return Math.max(0, sampler.sample(random));
+            }
+        };
+    }
+}
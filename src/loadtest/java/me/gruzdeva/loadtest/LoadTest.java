@@ -0,0 +1,272 @@
+package me.gruzdeva.loadtest;
+
+import me.gruzdeva.api.ApiClient;
+import me.gruzdeva.metrics.Histogram;
+import me.gruzdeva.metrics.Metrics;
+import me.gruzdeva.metrics.ServiceMetrics;
+import me.gruzdeva.metrics.WriterMetrics;
+import me.gruzdeva.utils.ApiTaskPooler;
+import me.gruzdeva.utils.DataProcessor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Drives ApiTaskPooler and DataProcessor against {@link MockApiServer} and reports the sustained throughput.
+ * Arguments are key=value pairs:
+ * <ul>
+ *     <li>services (30) - polled tasks, spread over NYTimes, CatFacts and Weather</li>
+ *     <li>threads (8), mode (blocking), format (json), interval_ms (100) - as for the application; a list of
+ *     modes, e.g. mode=blocking,virtual, runs the test once per mode in a separate JVM and compares them</li>
+ *     <li>duration_s (30), warmup_s (5) - rates are measured after the warmup</li>
+ *     <li>payload_kb (16), latency (lognormal:20:200), error_rate (0), rate_limit_rate (0), retry_after_s (1)
+ *     - behaviour of the mock server, see {@link LatencyDistribution}</li>
+ *     <li>any key with a dot, e.g. output.sink=mmap - set as a configuration override</li>
+ * </ul>
+ * The services are pointed at the mock server, their rate limits, adaptive polling and the NYTimes diff are off,
+ * and the connection pool is sized for the load, so only the pooler and the output limit the throughput.
+ */
+public class LoadTest {
+    private final static List<String> SERVICE_NAMES = List.of(
+            ApiClient.SERVICE_NYTIMES, ApiClient.SERVICE_CAT_FACTS, ApiClient.SERVICE_WEATHER);
+
+    // printed by every run, collected by the mode comparison
+    private final static String RESULT_PREFIX = "RESULT ";
+
+    private record Snapshot(long nanos, long fetches, long errors, long rateLimited, long records, long bytes) {
+
+        static Snapshot take() {
+            long fetches = 0;
+            long errors = 0;
+            long rateLimited = 0;
+            for (ServiceMetrics service : Metrics.getServices()) {
+                fetches += service.getFetchHistogram().getCount();
+                errors += service.getErrors();
+                rateLimited += service.getErrorCodes().getOrDefault("ErrApiClient003", 0L);
+            }
+            long records = 0;
+            long bytes = 0;
+            for (WriterMetrics writer : Metrics.getWriters()) {
+                records += writer.getRecordsWritten();
+                bytes += writer.getBytesWritten();
+            }
+            return new Snapshot(System.nanoTime(), fetches, errors, rateLimited, records, bytes);
+        }
+
+        double perSecond(Snapshot earlier, Function<Snapshot, Long> counter) {
+            double seconds = (double) (nanos - earlier.nanos) / TimeUnit.SECONDS.toNanos(1);
+            return (counter.apply(this) - counter.apply(earlier)) / seconds;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArguments(args);
+        if (options.getOrDefault("mode", "").contains(",")) {
+            compareModes(args, options.get("mode").split(","));
+            return;
+        }
+        int services = Integer.parseInt(options.getOrDefault("services", "30"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        int intervalMillis = Integer.parseInt(options.getOrDefault("interval_ms", "100"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration_s", "30"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup_s", "5"));
+        ApiTaskPooler.Mode mode = ApiTaskPooler.Mode.fromString(options.get("mode"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("pooler.async.max_in_flight", "256"));
+
+        MockApiServer server = MockApiServer.start(options);
+        // before the first service or client class is loaded, they read the configuration once
+        configure(server.getBaseUrl(), Math.max(threads, maxInFlight), options);
+
+        Path outDir = Files.createTempDirectory("loadtest");
+        DataProcessor processor = new DataProcessor(options.getOrDefault("format", "json"), outDir.toString());
+        ApiTaskPooler pooler = new ApiTaskPooler(threads, mode, maxInFlight);
+        for (int i = 0; i < services; i++) {
+            pooler.addTask(ApiClient.getApiClient(SERVICE_NAMES.get(i % SERVICE_NAMES.size())), intervalMillis, processor);
+        }
+        System.out.printf("%d services every %d ms (%.0f requests/s offered), %d threads, %s mode, mock at %s%n",
+                services, intervalMillis, services * 1000.0 / intervalMillis, threads, mode, server.getBaseUrl());
+        pooler.start();
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long peakHeap = 0;
+        long gcMillisAtStart = gcMillis();
+        Snapshot previous = Snapshot.take();
+        Snapshot measured = previous;
+        for (int second = 1; second <= warmupSeconds + durationSeconds; second++) {
+            Thread.sleep(1000);
+            Snapshot now = Snapshot.take();
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            System.out.printf("%3ds%s fetches/s %8.1f  errors/s %6.1f  written/s %8.1f records %10.0f bytes  "
+                            + "queue %4d  backlog %5d%n",
+                    second, second <= warmupSeconds ? " (warmup)" : "        ",
+                    now.perSecond(previous, Snapshot::fetches), now.perSecond(previous, Snapshot::errors),
+                    now.perSecond(previous, Snapshot::records), now.perSecond(previous, Snapshot::bytes),
+                    Metrics.getPooler().getQueueDepth(), backlog());
+            if (second == warmupSeconds) {
+                measured = now;
+            }
+            previous = now;
+        }
+        Snapshot end = previous;
+
+        pooler.shutdown();
+        processor.close();
+        ApiClient.closeHttpClient();
+        server.stop();
+        report(measured, end, server, mode, peakHeap, gcMillis() - gcMillisAtStart);
+        if (!"true".equalsIgnoreCase(options.get("keep_output"))) {
+            deleteRecursively(outDir);
+        }
+        System.exit(0);
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            options.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+        return options;
+    }
+
+    private static void configure(String baseUrl, int connections, Map<String, String> options) {
+        System.setProperty("nytimes.url.base", baseUrl);
+        System.setProperty("catfacts.url.base", baseUrl);
+        System.setProperty("weather.url.base", baseUrl);
+        System.setProperty("polling.adaptive", "false");
+        System.setProperty("nytimes.diff", "false");
+        for (String serviceName : SERVICE_NAMES) {
+            System.setProperty("ratelimit." + serviceName + ".per_minute", "0");
+        }
+        // all services share one host, so one route of the pool
+        System.setProperty("http.pool.max_total", String.valueOf(connections));
+        System.setProperty("http.pool.max_per_route", String.valueOf(connections));
+        options.forEach((key, value) -> {
+            if (key.contains(".")) {
+                System.setProperty(key, value);
+            }
+        });
+    }
+
+    private static int backlog() {
+        int backlog = 0;
+        for (WriterMetrics writer : Metrics.getWriters()) {
+            backlog += writer.getBacklog();
+        }
+        return backlog;
+    }
+
+    /**
+     * Runs the test once per mode, each in its own JVM so that the configuration, the metrics and the heap
+     * of one run do not carry over to the next, and prints the results side by side.
+     */
+    private static void compareModes(String[] args, String[] modes) throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> results = new ArrayList<>();
+        for (String mode : modes) {
+            List<String> command = new ArrayList<>(List.of(java));
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.addAll(List.of("-cp", System.getProperty("java.class.path"), LoadTest.class.getName()));
+            for (String arg : args) {
+                command.add(arg.trim().startsWith("mode=") ? "mode=" + mode.trim() : arg);
+            }
+            System.out.printf("=== mode %s ===%n", mode.trim());
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader output = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    System.out.println(line);
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        results.add(line.substring(RESULT_PREFIX.length()));
+                    }
+                }
+            }
+            if (process.waitFor() != 0) {
+                System.out.printf("Run in mode %s failed with exit code %d%n", mode.trim(), process.exitValue());
+            }
+        }
+        System.out.println();
+        System.out.printf("%-10s %12s %14s %15s %14s %8s%n",
+                "mode", "fetches/s", "fetch p99 ms", "peak heap MB", "peak threads", "GC ms");
+        results.forEach(System.out::println);
+        if (Runtime.version().feature() < 21) {
+            System.out.printf("Java %d has no virtual threads, the virtual mode ran on a fixed pool of platform threads%n",
+                    Runtime.version().feature());
+        }
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static void report(Snapshot start, Snapshot end, MockApiServer server, ApiTaskPooler.Mode mode,
+                               long peakHeap, long gcMillis) {
+        Histogram fetch = new Histogram();
+        Histogram parse = new Histogram();
+        Histogram process = new Histogram();
+        for (ServiceMetrics service : Metrics.getServices()) {
+            fetch.add(service.getFetchHistogram());
+            parse.add(service.getParseHistogram());
+            process.add(service.getProcessHistogram());
+        }
+        System.out.println();
+        System.out.printf("Sustained fetches/s:   %.1f%n", end.perSecond(start, Snapshot::fetches));
+        System.out.printf("Errors/s:              %.1f (%.1f rate limited)%n",
+                end.perSecond(start, Snapshot::errors), end.perSecond(start, Snapshot::rateLimited));
+        System.out.printf("Records written/s:     %.1f%n", end.perSecond(start, Snapshot::records));
+        System.out.printf("Bytes written/s:       %.0f (%.2f MB/s)%n", end.perSecond(start, Snapshot::bytes),
+                end.perSecond(start, Snapshot::bytes) / (1024 * 1024));
+        System.out.printf("Fetch latency ms:      p50 %.1f  p99 %.1f  max %.1f%n", millis(fetch.percentile(0.5)),
+                millis(fetch.percentile(0.99)), millis(fetch.getMax()));
+        System.out.printf("Parse latency ms:      p50 %.2f  p99 %.2f  max %.2f%n", millis(parse.percentile(0.5)),
+                millis(parse.percentile(0.99)), millis(parse.getMax()));
+        System.out.printf("Process latency ms:    p50 %.2f  p99 %.2f  max %.2f%n", millis(process.percentile(0.5)),
+                millis(process.percentile(0.99)), millis(process.getMax()));
+        System.out.printf("Mock server:           %d served, %d errors, %d rate limited%n",
+                server.served.sum(), server.failed.sum(), server.rateLimited.sum());
+        // platform threads only, virtual threads are not counted by the thread MXBean
+        int peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+        System.out.printf("Peak heap used MB:     %.1f%n", peakHeap / (1024.0 * 1024));
+        System.out.printf("Peak platform threads: %d%n", peakThreads);
+        System.out.printf("GC time ms:            %d%n", gcMillis);
+        System.out.println("Latencies include the warmup, rates do not.");
+        System.out.printf(RESULT_PREFIX + "%-10s %12.1f %14.1f %15.1f %14d %8d%n", mode.name().toLowerCase(),
+                end.perSecond(start, Snapshot::fetches), millis(fetch.percentile(0.99)),
+                peakHeap / (1024.0 * 1024), peakThreads, gcMillis);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
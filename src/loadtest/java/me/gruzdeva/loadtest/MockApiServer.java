@@ -0,0 +1,125 @@
+package me.gruzdeva.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import me.gruzdeva.Payloads;
+import me.gruzdeva.config.ConfigManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local HTTP server that answers like the NYTimes most popular, CatFacts and WeatherStack endpoints,
+ * on the paths the services take from config.properties. Every request is delayed by the latency
+ * distribution, then answered with 429 (rate_limit_rate), 500 (error_rate) or a body of about payload_kb.
+ */
+class MockApiServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final double rateLimitRate;
+    private final String retryAfterSeconds;
+
+    final LongAdder served = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder rateLimited = new LongAdder();
+
+    private MockApiServer(HttpServer server, Map<String, String> options) {
+        this.server = server;
+        this.latency = LatencyDistribution.parse(options.getOrDefault("latency", "lognormal:20:200"));
+        this.errorRate = Double.parseDouble(options.getOrDefault("error_rate", "0"));
+        this.rateLimitRate = Double.parseDouble(options.getOrDefault("rate_limit_rate", "0"));
+        this.retryAfterSeconds = options.getOrDefault("retry_after_s", "1");
+        int payloadKb = Integer.parseInt(options.getOrDefault("payload_kb", "16"));
+
+        byte[] nyTimes = Payloads.nyTimes(payloadKb, 0);
+        byte[] catFacts = Payloads.object(payloadKb);
+        byte[] weather = weather(payloadKb);
+        server.createContext(ConfigManager.getProperty("nytimes.url.most_popular"), exchange -> handle(exchange, nyTimes));
+        server.createContext("/fact", exchange -> handle(exchange, catFacts));
+        server.createContext(ConfigManager.getProperty("weather.url.current"), exchange -> handle(exchange, weather));
+
+        // responses are delayed by sleeping, so every request in flight needs its own thread
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "mock-api");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+    }
+
+    static MockApiServer start(Map<String, String> options) throws IOException {
+        // headers and body are written separately, without TCP_NODELAY every response waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        MockApiServer mock = new MockApiServer(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024), options);
+        mock.server.start();
+        return mock;
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange, byte[] body) throws IOException {
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = latency.sampleMillis(random);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            double roll = random.nextDouble();
+            if (roll < rateLimitRate) {
+                rateLimited.increment();
+                exchange.getResponseHeaders().set("Retry-After", retryAfterSeconds);
+                exchange.sendResponseHeaders(429, -1);
+            } else if (roll < rateLimitRate + errorRate) {
+                failed.increment();
+                exchange.sendResponseHeaders(500, -1);
+            } else {
+                served.increment();
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * A WeatherStack current weather object, padded with observations up to about the requested size.
+     */
+    private static byte[] weather(int kilobytes) {
+        StringBuilder json = new StringBuilder("{\"request\":{\"type\":\"City\",\"query\":\"Berlin, Germany\"},")
+                .append("\"location\":{\"name\":\"Berlin\",\"country\":\"Germany\",\"lat\":\"52.517\"},")
+                .append("\"current\":{\"observation_time\":\"12:00 PM\",\"temperature\":18,")
+                .append("\"weather_descriptions\":[\"Partly cloudy\"],\"wind_speed\":11,\"humidity\":60},")
+                .append("\"history\":[");
+        for (int i = 0; json.length() < kilobytes * 1024; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"hour\":").append(i % 24).append(",\"temperature\":").append(10 + i % 15)
+                    .append(",\"description\":\"Light rain, later clearing\"}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
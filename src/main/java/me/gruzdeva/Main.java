@@ -2,12 +2,14 @@ package me.gruzdeva;
 
 import me.gruzdeva.api.ApiClient;
 import me.gruzdeva.config.ConfigManager;
+import me.gruzdeva.metrics.MetricsServer;
 import me.gruzdeva.utils.ApiTaskPooler;
 import me.gruzdeva.utils.DataProcessor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 
@@ -19,7 +21,7 @@ class Main {
     public final static String NEGATIVE_MAX_THREADS = "Invalid maximum number of threads. Please provide a positive integer.";
     public final static String INVALID_NUMBER_OF_ARGS = """
             Please provide correct arguments: \
-            maxThreads, timeout, services (comma-separated), and output format (json/csv).
+            maxThreads, timeout, services (comma-separated), and output format (json/csv/ndjson/columnar).
             Usage: <threads> <timeout> <services> <format>
             Example: 5 10 NYTimes,CatFacts json""";
 
@@ -37,7 +39,7 @@ class Main {
      * 1st - maximum number of threads
      * 2nd - number of seconds between calling api
      * 3rd - list of services to be called
-     * 4th - result format (json or csv)
+     * 4th - result format (json, csv, ndjson or columnar)
      */
     public static void main(String[] args) {
         try {
@@ -55,7 +57,9 @@ class Main {
             outFormat = (String) arguments.get(3);
 
             DataProcessor dataProcessor = new DataProcessor(outFormat);
-            ApiTaskPooler apiTaskPooler = new ApiTaskPooler(maxThreads);
+            ApiTaskPooler.Mode poolerMode = ApiTaskPooler.Mode.fromString(ConfigManager.getProperty("pooler.mode"));
+            int maxInFlight = ConfigManager.getIntProperty("pooler.async.max_in_flight", 256);
+            ApiTaskPooler apiTaskPooler = new ApiTaskPooler(maxThreads, poolerMode, maxInFlight);
 
             for (String service : services) {
                 ApiClient apiClient = ApiClient.getApiClient(service);
@@ -67,12 +71,13 @@ class Main {
             }
 
             apiTaskPooler.start();
+            MetricsServer metricsServer = MetricsServer.startIfEnabled();
 
             int runDuration = timeout * N; // Example: run for N cycles of the timeout
             logger.info("Application will shut down in {} milliseconds", runDuration);
 
             try {
-                Thread shutdownThread = getShutdownThread(runDuration, apiTaskPooler);
+                Thread shutdownThread = getShutdownThread(runDuration, apiTaskPooler, dataProcessor, metricsServer);
 
                 // Wait for the shutdown thread to complete
                 shutdownThread.join();
@@ -84,18 +89,28 @@ class Main {
         }
     }
 
-    private static Thread getShutdownThread(int runDuration, ApiTaskPooler apiTaskPooler) {
+    private static Thread getShutdownThread(int runDuration, ApiTaskPooler apiTaskPooler, DataProcessor dataProcessor,
+                                            MetricsServer metricsServer) {
         Thread shutdownThread = new Thread(() -> {
             try {
                 Thread.sleep(runDuration);
                 logger.info("Shutdown timer elapsed. Shutting down application...");
                 apiTaskPooler.shutdown();
+                ApiClient.closeHttpClient();
                 // Some time for tasks to complete
                 Thread.sleep(2000);
+                // writes everything still queued before exiting
+                dataProcessor.close();
+                if (metricsServer != null) {
+                    metricsServer.stop();
+                }
                 System.exit(0);
             } catch (InterruptedException e) {
                 logger.error("Shutdown timer interrupted: {}", e.getMessage());
                 Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                logger.error("ErrMain002. Error closing output: {}", e.getMessage());
+                System.exit(1);
             }
         });
         shutdownThread.setDaemon(true);
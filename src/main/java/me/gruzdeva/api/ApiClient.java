@@ -1,18 +1,37 @@
 package me.gruzdeva.api;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import me.gruzdeva.metrics.Metrics;
+import me.gruzdeva.metrics.ServiceMetrics;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 public interface ApiClient {
     Logger logger = LoggerFactory.getLogger(ApiClient.class);
@@ -23,7 +42,21 @@ public interface ApiClient {
     String SERVICE_WEATHER = "Weather";
     Set<String> SERVICES = Set.of(SERVICE_NYTIMES, SERVICE_CAT_FACTS, SERVICE_WEATHER);
 
-    String fetchData() throws Exception;
+    ApiPayload fetchData() throws Exception;
+
+    /**
+     * Non-blocking variant of {@link #fetchData()}. The request is executed by the shared async client,
+     * so no caller thread is held while waiting for the response.
+     */
+    CompletableFuture<ApiPayload> fetchDataAsync();
+
+    /**
+     * Like {@link #fetchDataAsync()}, but work on the response beyond the request itself (the NYTimes diff)
+     * runs on the given executor instead of the I/O threads of the async client.
+     */
+    default CompletableFuture<ApiPayload> fetchDataAsync(Executor executor) {
+        return fetchDataAsync();
+    }
     String getServiceName();
 
     static ApiClient getApiClient(String serviceName) {
@@ -41,32 +74,235 @@ public interface ApiClient {
         return apiClient;
     }
 
+    /**
+     * Returns the shared pooled client. It must not be closed by callers, use {@link #closeHttpClient()} on shutdown.
+     */
     static CloseableHttpClient getHttpClient() {
-        return HttpClients.createDefault();
+        return HttpClientHolder.get();
     }
 
-    static String serializeToJson(JsonNode node) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(node);
+    static CloseableHttpAsyncClient getHttpAsyncClient() {
+        return HttpClientHolder.getAsync();
     }
 
-    static JsonNode callApi(String url) throws Exception {
-        try (CloseableHttpClient httpClient = getHttpClient()) {
-            HttpGet request = new HttpGet(url);
-            try (CloseableHttpResponse response = httpClient.execute(request)) {
-                if (response.getCode() != 200) {
-                    throw new Exception(url + " Failed to fetch data : " + response.getReasonPhrase());
-                }
-                try {
-                    String json = EntityUtils.toString(response.getEntity());
-                    return objectMapper.readTree(json);
-                } catch (Exception e) {
-                    logger.error("{} - ErrApiClient001 - Received status code is not 200: {}", url, e.getMessage());
-                    throw new Exception("ErrApiClient001", e);
+    static void closeHttpClient() {
+        HttpClientHolder.close();
+    }
+
+    /**
+     * Fetches the url and returns the raw body. The body is not parsed here,
+     * consumers parse it at most once through {@link ApiPayload#getTree()}.
+     * The request is conditional if a response of the url was written before, a 304 answer is returned
+     * as a payload without body, see {@link ApiPayload#isNotModified()}. The validators of a response
+     * are only remembered when the payload is committed.
+     * The request is cancelled when it exceeds the service's total timeout, see {@link ServiceTimeouts}.
+     */
+    static ApiPayload callApi(String serviceName, String url) throws Exception {
+        if (LatencyTracker.isHedged(serviceName)) {
+            // a hedged request needs a second request in flight, only the async client can do that
+            try {
+                return callApiAsync(serviceName, url).get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        CloseableHttpClient httpClient = getHttpClient();
+        HttpGet request = new HttpGet(url);
+        request.setConfig(ServiceTimeouts.requestConfig(serviceName));
+        ValidatorCache.apply(url, request);
+        Instant fetchedAt = Instant.now();
+        long start = System.nanoTime();
+        ServiceMetrics metrics = Metrics.service(serviceName);
+        metrics.onRequest();
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> deadline = ServiceTimeouts.schedule(() -> {
+            expired.set(true);
+            request.cancel();
+        }, ServiceTimeouts.totalMillis(serviceName));
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            if (response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(response.getEntity());
+                LatencyTracker.record(serviceName, elapsedMillis(start));
+                metrics.onNotModified(System.nanoTime() - start);
+                return ApiPayload.notModified(serviceName, fetchedAt, elapsedMillis(start));
+            }
+            if (isRateLimited(response)) {
+                EntityUtils.consume(response.getEntity());
+                metrics.onError("ErrApiClient003");
+                throw rateLimited(serviceName, url, response);
+            }
+            if (response.getCode() != 200) {
+                // consume the body so the connection can go back to the pool
+                EntityUtils.consume(response.getEntity());
+                metrics.onError("ErrApiClient001");
+                throw new Exception(url + " Failed to fetch data : " + response.getReasonPhrase());
+            }
+            try {
+                byte[] body = EntityUtils.toByteArray(response.getEntity());
+                LatencyTracker.record(serviceName, elapsedMillis(start));
+                metrics.onResponse(System.nanoTime() - start, body.length);
+                return new ApiPayload(serviceName, fetchedAt, elapsedMillis(start), body)
+                        .withCommit(ValidatorCache.updateOnCommit(url, response));
+            } catch (Exception e) {
+                if (expired.get()) {
+                    // the deadline cancelled the request while the body was read, reported as ErrApiClient004 below
+                    throw e instanceof IOException ioException ? ioException : new IOException(e);
                 }
+                metrics.onError("ErrApiClient001");
+                logger.error("{} - ErrApiClient001 - Received status code is not 200: {}", url, e.getMessage());
+                throw new Exception("ErrApiClient001", e);
             }
         } catch (IOException e) {
+            if (expired.get()) {
+                metrics.onError("ErrApiClient004");
+                logger.error("{} ErrApiClient004. Request cancelled after {} ms", url, ServiceTimeouts.totalMillis(serviceName));
+                throw new IOException("ErrApiClient004", e);
+            }
+            metrics.onError("ErrApiClient002");
             logger.error("{} ErrApiClient002. Error connecting to API: {}", url, e.getMessage());
             throw new IOException("ErrApiClient002", e);
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #callApi(String, String)}. If hedging is enabled for the service and
+     * the request has not completed by the observed p95 latency, a second request is sent and the first
+     * successful answer is used, the other request is cancelled.
+     */
+    static CompletableFuture<ApiPayload> callApiAsync(String serviceName, String url) {
+        long hedgeAfter = LatencyTracker.hedgeDelayMillis(serviceName);
+        CompletableFuture<ApiPayload> primary = exchangeAsync(serviceName, url);
+        if (hedgeAfter < 0) {
+            return primary;
+        }
+
+        CompletableFuture<ApiPayload> result = new CompletableFuture<>();
+        // requests that may still answer, the result fails only when all of them failed
+        AtomicInteger pending = new AtomicInteger(1);
+        BiConsumer<ApiPayload, Throwable> onAnswer = (payload, e) -> {
+            if (e == null) {
+                result.complete(payload);
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+        };
+        primary.whenComplete(onAnswer);
+        ScheduledFuture<?> hedge = ServiceTimeouts.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            logger.debug("{} not answered after {} ms, sending a hedged request", url, hedgeAfter);
+            pending.incrementAndGet();
+            CompletableFuture<ApiPayload> secondary = exchangeAsync(serviceName, url);
+            secondary.whenComplete(onAnswer);
+            result.whenComplete((payload, e) -> secondary.cancel(true));
+        }, hedgeAfter);
+        result.whenComplete((payload, e) -> {
+            hedge.cancel(false);
+            primary.cancel(true);
+        });
+        return result;
+    }
+
+    /**
+     * A single async request. Cancelling the returned future cancels the request.
+     */
+    private static CompletableFuture<ApiPayload> exchangeAsync(String serviceName, String url) {
+        CompletableFuture<SimpleHttpResponse> responseFuture = new CompletableFuture<>();
+        Instant fetchedAt = Instant.now();
+        long start = System.nanoTime();
+        ServiceMetrics metrics = Metrics.service(serviceName);
+        metrics.onRequest();
+        SimpleHttpRequest request = SimpleRequestBuilder.get(url).build();
+        request.setConfig(ServiceTimeouts.requestConfig(serviceName));
+        ValidatorCache.apply(url, request);
+        Future<SimpleHttpResponse> exchange = getHttpAsyncClient().execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                responseFuture.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                metrics.onError("ErrApiClient002");
+                logger.error("{} ErrApiClient002. Error connecting to API: {}", url, e.getMessage());
+                responseFuture.completeExceptionally(new IOException("ErrApiClient002", e));
+            }
+
+            @Override
+            public void cancelled() {
+                responseFuture.cancel(false);
+            }
+        });
+
+        CompletableFuture<ApiPayload> payloadFuture = responseFuture.thenApply(response -> {
+            if (response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                LatencyTracker.record(serviceName, elapsedMillis(start));
+                metrics.onNotModified(System.nanoTime() - start);
+                return ApiPayload.notModified(serviceName, fetchedAt, elapsedMillis(start));
+            }
+            if (isRateLimited(response)) {
+                metrics.onError("ErrApiClient003");
+                throw new CompletionException(rateLimited(serviceName, url, response));
+            }
+            if (response.getCode() != 200) {
+                metrics.onError("ErrApiClient001");
+                throw new CompletionException(
+                        new Exception(url + " Failed to fetch data : " + response.getReasonPhrase()));
+            }
+            byte[] body = response.getBodyBytes();
+            LatencyTracker.record(serviceName, elapsedMillis(start));
+            metrics.onResponse(System.nanoTime() - start, body == null ? 0 : body.length);
+            return new ApiPayload(serviceName, fetchedAt, elapsedMillis(start), body == null ? new byte[0] : body)
+                    .withCommit(ValidatorCache.updateOnCommit(url, response));
+        });
+
+        long totalMillis = ServiceTimeouts.totalMillis(serviceName);
+        ScheduledFuture<?> deadline = ServiceTimeouts.schedule(() -> {
+            if (payloadFuture.completeExceptionally(new IOException("ErrApiClient004"))) {
+                metrics.onError("ErrApiClient004");
+                logger.error("{} ErrApiClient004. Request cancelled after {} ms", url, totalMillis);
+            }
+        }, totalMillis);
+        payloadFuture.whenComplete((payload, e) -> {
+            deadline.cancel(false);
+            if (e != null) {
+                // cancelled, timed out or lost the race: stop the exchange if it is still running
+                exchange.cancel(true);
+            }
+        });
+        return payloadFuture;
+    }
+
+    private static boolean isRateLimited(HttpResponse response) {
+        return response.getCode() == HttpStatus.SC_TOO_MANY_REQUESTS
+                || (response.getCode() == HttpStatus.SC_SERVICE_UNAVAILABLE && response.containsHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    private static RateLimitedException rateLimited(String serviceName, String url, HttpResponse response) {
+        long retryAfterMillis = 0;
+        Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            String value = retryAfter.getValue().trim();
+            try {
+                // either a number of seconds or an HTTP date
+                retryAfterMillis = Long.parseLong(value) * 1000;
+            } catch (NumberFormatException e) {
+                Instant retryAt = DateUtils.parseStandardDate(value);
+                if (retryAt != null) {
+                    retryAfterMillis = Math.max(0, retryAt.toEpochMilli() - System.currentTimeMillis());
+                }
+            }
         }
+        logger.warn("{} ErrApiClient003. Rate limited by the service ({}), retry after {} ms",
+                url, response.getCode(), retryAfterMillis);
+        return new RateLimitedException(serviceName, retryAfterMillis);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
     }
 }
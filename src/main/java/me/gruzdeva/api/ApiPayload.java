@@ -0,0 +1,104 @@
+package me.gruzdeva.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AccessLevel;
+import lombok.Getter;
+import me.gruzdeva.metrics.Metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * A fetched response as it travels from {@link ApiClient} to the output.
+ * The body is kept as raw bytes and parsed lazily, at most once, when a consumer needs the tree.
+ */
+@Getter
+public class ApiPayload {
+    private final String serviceName;
+    private final Instant fetchedAt;
+    private final long latencyMillis;
+    private final byte[] body;
+    // the server answered 304, the previous response is still current and there is no body
+    private final boolean notModified;
+
+    // state of the client that may only be updated once the payload is written, null if there is none
+    @Getter(AccessLevel.NONE)
+    private final Runnable commit;
+
+    @Getter(AccessLevel.NONE)
+    private volatile JsonNode tree;
+
+    public ApiPayload(String serviceName, Instant fetchedAt, long latencyMillis, byte[] body) {
+        this(serviceName, fetchedAt, latencyMillis, body, false, null);
+    }
+
+    private ApiPayload(String serviceName, Instant fetchedAt, long latencyMillis, byte[] body, boolean notModified,
+                       Runnable commit) {
+        this.serviceName = serviceName;
+        this.fetchedAt = fetchedAt;
+        this.latencyMillis = latencyMillis;
+        this.body = body;
+        this.notModified = notModified;
+        this.commit = commit;
+    }
+
+    public static ApiPayload notModified(String serviceName, Instant fetchedAt, long latencyMillis) {
+        return new ApiPayload(serviceName, fetchedAt, latencyMillis, new byte[0], true, null);
+    }
+
+    /**
+     * Returns the same payload with an action to run by {@link #commit()}, after the actions it already has.
+     */
+    public ApiPayload withCommit(Runnable commit) {
+        Runnable previous = this.commit;
+        Runnable combined = previous == null ? commit : () -> {
+            previous.run();
+            commit.run();
+        };
+        ApiPayload payload = new ApiPayload(serviceName, fetchedAt, latencyMillis, body, notModified, combined);
+        payload.tree = tree;
+        return payload;
+    }
+
+    /**
+     * Called once the output has accepted the payload (written it, or dropped it as nothing new).
+     * Not called when processing failed, so the client reports the same data again on the next poll.
+     */
+    public void commit() {
+        if (commit != null) {
+            commit.run();
+        }
+    }
+
+    public static ApiPayload of(String serviceName, String data) {
+        byte[] body = data == null ? new byte[0] : data.getBytes(StandardCharsets.UTF_8);
+        return new ApiPayload(serviceName, Instant.now(), 0, body);
+    }
+
+    public boolean isEmpty() {
+        return body == null || body.length == 0;
+    }
+
+    public InputStream openStream() {
+        return new ByteArrayInputStream(body);
+    }
+
+    public JsonNode getTree() throws IOException {
+        JsonNode result = tree;
+        if (result == null) {
+            // a racing second parse is harmless, both trees are equal
+            long start = System.nanoTime();
+            result = ApiClient.objectMapper.readTree(body);
+            Metrics.service(serviceName).onParsed(System.nanoTime() - start);
+            tree = result;
+        }
+        return result;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
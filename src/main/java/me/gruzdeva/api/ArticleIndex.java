@@ -0,0 +1,137 @@
+package me.gruzdeva.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers the articles of the previous poll of one most-viewed list (id, rank and content hash)
+ * and turns the next full list into change events:
+ * <ul>
+ *     <li>{@code new} - the article was not in the previous list</li>
+ *     <li>{@code changed} - the content of the article changed, its rank may have changed too</li>
+ *     <li>{@code rank} - only the rank changed</li>
+ *     <li>{@code removed} - the article is no longer in the list, only id, url and previous rank are known</li>
+ * </ul>
+ * Unchanged articles produce no event, so the first poll emits the whole list as {@code new}
+ * and later polls only what moved. A poll becomes the reference for the next one only when its changes
+ * are committed, after they were written; changes that failed to be written are reported again.
+ */
+class ArticleIndex {
+    final static String CHANGE_NEW = "new";
+    final static String CHANGE_CHANGED = "changed";
+    final static String CHANGE_RANK = "rank";
+    final static String CHANGE_REMOVED = "removed";
+
+    private record Entry(int rank, long contentHash, String url) {
+    }
+
+    /**
+     * Change events of one poll, the list they were computed from becomes the reference on {@link #commit()}.
+     */
+    final class Changes {
+        @Getter
+        private final ArrayNode events;
+        private final Map<String, Entry> current;
+
+        private Changes(ArrayNode events, Map<String, Entry> current) {
+            this.events = events;
+            this.current = current;
+        }
+
+        void commit() {
+            lock.lock();
+            try {
+                previous = current;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Map<String, Entry> previous = new HashMap<>();
+    // polls of the same list may overlap in async mode
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Returns the change events for the given "results" array, in rank order, followed by removals.
+     * The index itself is not updated until the changes are committed.
+     */
+    Changes diff(ArrayNode results) {
+        ArrayNode events = ApiClient.objectMapper.createArrayNode();
+        Map<String, Entry> current = new HashMap<>();
+
+        lock.lock();
+        try {
+            int rank = 0;
+            for (JsonNode article : results) {
+                rank++;
+                String id = articleId(article, rank);
+                Entry entry = new Entry(rank, contentHash(article), article.path("url").asText(""));
+                current.put(id, entry);
+
+                Entry before = previous.get(id);
+                String change;
+                if (before == null) {
+                    change = CHANGE_NEW;
+                } else if (before.contentHash() != entry.contentHash()) {
+                    change = CHANGE_CHANGED;
+                } else if (before.rank() != rank) {
+                    change = CHANGE_RANK;
+                } else {
+                    continue;
+                }
+                ObjectNode event = article.isObject()
+                        ? ((ObjectNode) article).deepCopy()
+                        : ApiClient.objectMapper.createObjectNode();
+                event.put("change", change);
+                event.put("rank", rank);
+                if (before != null) {
+                    event.put("previous_rank", before.rank());
+                }
+                events.add(event);
+            }
+
+            previous.entrySet().stream()
+                    .filter(removed -> !current.containsKey(removed.getKey()))
+                    .sorted(Comparator.comparingInt(removed -> removed.getValue().rank()))
+                    .forEach(removed -> {
+                        ObjectNode event = events.addObject();
+                        event.put("id", removed.getKey());
+                        event.put("url", removed.getValue().url());
+                        event.put("change", CHANGE_REMOVED);
+                        event.put("previous_rank", removed.getValue().rank());
+                    });
+        } finally {
+            lock.unlock();
+        }
+        return new Changes(events, current);
+    }
+
+    private static String articleId(JsonNode article, int rank) {
+        JsonNode id = article.get("id");
+        if (id != null && !id.isNull()) {
+            return id.asText();
+        }
+        String url = article.path("url").asText("");
+        // without id or url the position is all there is
+        return url.isEmpty() ? "#" + rank : url;
+    }
+
+    // 64-bit FNV-1a of the serialized article, field order is stable between polls of the same API
+    private static long contentHash(JsonNode article) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : article.toString().getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -1,9 +1,10 @@
 package me.gruzdeva.api;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import lombok.NoArgsConstructor;
 import me.gruzdeva.config.ConfigManager;
 
+import java.util.concurrent.CompletableFuture;
+
 @NoArgsConstructor
 public class CatFactsService implements ApiClient {
     private static final String API_URL = ConfigManager.getProperty("catfacts.url.base");
@@ -14,23 +15,25 @@ public class CatFactsService implements ApiClient {
     }
 
     @Override
-    public String fetchData() throws Exception {
+    public ApiPayload fetchData() throws Exception {
         logger.info("Fetching data from CatFacts service");
-        String result = null;
-
-        JsonNode resultNode = fetchCatFact();
-        try {
-            result = ApiClient.serializeToJson(resultNode);
-        } catch (Exception e) {
-            logger.error("ErrCatFact001. Error processing data from WeatherStack: {}", e.getMessage());
-            throw new IllegalArgumentException("ErrCatFact001.", e);
-        }
-        return result  + "\n";
+
+        return fetchCatFact();
+    }
+
+    @Override
+    public CompletableFuture<ApiPayload> fetchDataAsync() {
+        logger.info("Fetching data asynchronously from CatFacts service");
+
+        return ApiClient.callApiAsync(getServiceName(), getCatFactUrl());
+    }
+
+    private ApiPayload fetchCatFact() throws Exception {
+        return ApiClient.callApi(getServiceName(), getCatFactUrl());
     }
 
-    private JsonNode fetchCatFact() throws Exception {
-        String url = API_URL + "/fact";
-        return ApiClient.callApi(url);
+    private static String getCatFactUrl() {
+        return API_URL + "/fact";
     }
 
 
@@ -0,0 +1,151 @@
+package me.gruzdeva.api;
+
+import me.gruzdeva.config.ConfigManager;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Owns the process-wide HTTP clients. All services share one pooled client so that
+ * connections (and their TLS sessions) are kept alive and reused between polls.
+ * The async client is created only when the non-blocking fetch path is used.
+ */
+final class HttpClientHolder {
+    private final static Logger logger = LoggerFactory.getLogger(HttpClientHolder.class);
+
+    private final static int DEFAULT_MAX_TOTAL = 50;
+    private final static int DEFAULT_MAX_PER_ROUTE = 10;
+    private final static int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+    private final static int DEFAULT_IDLE_EVICT_SECONDS = 30;
+    private final static int DEFAULT_IO_THREADS = 2;
+
+    private static volatile CloseableHttpClient httpClient;
+    private static volatile CloseableHttpAsyncClient httpAsyncClient;
+
+    private HttpClientHolder() {
+    }
+
+    static CloseableHttpClient get() {
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (HttpClientHolder.class) {
+                client = httpClient;
+                if (client == null) {
+                    client = create();
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    static CloseableHttpAsyncClient getAsync() {
+        CloseableHttpAsyncClient client = httpAsyncClient;
+        if (client == null) {
+            synchronized (HttpClientHolder.class) {
+                client = httpAsyncClient;
+                if (client == null) {
+                    client = createAsync();
+                    client.start();
+                    httpAsyncClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    static void close() {
+        CloseableHttpClient client;
+        CloseableHttpAsyncClient asyncClient;
+        synchronized (HttpClientHolder.class) {
+            client = httpClient;
+            asyncClient = httpAsyncClient;
+            httpClient = null;
+            httpAsyncClient = null;
+        }
+        if (client != null) {
+            client.close(CloseMode.GRACEFUL);
+            logger.info("Shared HTTP client closed");
+        }
+        if (asyncClient != null) {
+            asyncClient.close(CloseMode.GRACEFUL);
+            logger.info("Shared async HTTP client closed");
+        }
+    }
+
+    private static CloseableHttpClient create() {
+        int maxTotal = ConfigManager.getIntProperty("http.pool.max_total", DEFAULT_MAX_TOTAL);
+        int maxPerRoute = ConfigManager.getIntProperty("http.pool.max_per_route", DEFAULT_MAX_PER_ROUTE);
+        int keepAliveSeconds = ConfigManager.getIntProperty("http.pool.keep_alive_seconds", DEFAULT_KEEP_ALIVE_SECONDS);
+        int idleEvictSeconds = ConfigManager.getIntProperty("http.pool.idle_evict_seconds", DEFAULT_IDLE_EVICT_SECONDS);
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setConnectionConfigResolver(ServiceTimeouts::connectionConfig)
+                .build();
+
+        logger.info("Creating shared HTTP client (maxTotal={}, maxPerRoute={}, keepAlive={}s, idleEvict={}s)",
+                maxTotal, maxPerRoute, keepAliveSeconds, idleEvictSeconds);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(ServiceTimeouts.requestConfig(null))
+                .setKeepAliveStrategy(keepAliveStrategy(keepAliveSeconds))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictSeconds))
+                .build();
+    }
+
+    private static CloseableHttpAsyncClient createAsync() {
+        int maxTotal = ConfigManager.getIntProperty("http.pool.max_total", DEFAULT_MAX_TOTAL);
+        int maxPerRoute = ConfigManager.getIntProperty("http.pool.max_per_route", DEFAULT_MAX_PER_ROUTE);
+        int keepAliveSeconds = ConfigManager.getIntProperty("http.pool.keep_alive_seconds", DEFAULT_KEEP_ALIVE_SECONDS);
+        int idleEvictSeconds = ConfigManager.getIntProperty("http.pool.idle_evict_seconds", DEFAULT_IDLE_EVICT_SECONDS);
+        int ioThreads = ConfigManager.getIntProperty("http.async.io_threads", DEFAULT_IO_THREADS);
+
+        PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setConnectionConfigResolver(ServiceTimeouts::connectionConfig)
+                .build();
+
+        logger.info("Creating shared async HTTP client (ioThreads={}, maxTotal={}, maxPerRoute={})",
+                ioThreads, maxTotal, maxPerRoute);
+        return HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(ServiceTimeouts.requestConfig(null))
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(ioThreads)
+                        .build())
+                .setKeepAliveStrategy(keepAliveStrategy(keepAliveSeconds))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictSeconds))
+                .build();
+    }
+
+    // Honour the server's Keep-Alive header, but never keep a connection longer than configured
+    private static DefaultConnectionKeepAliveStrategy keepAliveStrategy(int keepAliveSeconds) {
+        TimeValue maxKeepAlive = TimeValue.ofSeconds(keepAliveSeconds);
+        return new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public TimeValue getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                TimeValue duration = super.getKeepAliveDuration(response, context);
+                return TimeValue.isNonNegative(duration) && duration.compareTo(maxKeepAlive) < 0
+                        ? duration : maxKeepAlive;
+            }
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package me.gruzdeva.api;
+
+import me.gruzdeva.config.ConfigManager;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the latencies of the last successful requests per service and derives the hedging delay from them:
+ * a request that has not completed by the observed p95 gets a second, identical request, the first answer wins.
+ * Hedging is enabled with http.hedge.enabled or http.hedge.&lt;service&gt;.enabled, it starts once
+ * http.hedge.min_samples latencies are known.
+ */
+final class LatencyTracker {
+    private final static int WINDOW = 256;
+    private final static int DEFAULT_MIN_SAMPLES = 20;
+    private final static int DEFAULT_MIN_DELAY_MS = 50;
+    private final static double HEDGE_PERCENTILE = 0.95;
+
+    private final static Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private LatencyTracker() {
+    }
+
+    private static class Window {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        void add(long millis) {
+            lock.lock();
+            try {
+                samples[next] = millis;
+                next = (next + 1) % WINDOW;
+                count = Math.min(count + 1, WINDOW);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long[] snapshot() {
+            lock.lock();
+            try {
+                return Arrays.copyOf(samples, count);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static void record(String serviceName, long millis) {
+        windows.computeIfAbsent(serviceName, name -> new Window()).add(millis);
+    }
+
+    /**
+     * Returns the given percentile of the recent latencies, -1 if there are none.
+     */
+    static long percentile(String serviceName, double percentile) {
+        Window window = windows.get(serviceName);
+        long[] samples = window == null ? new long[0] : window.snapshot();
+        if (samples.length == 0) {
+            return -1;
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile * samples.length) - 1;
+        return samples[Math.max(0, Math.min(samples.length - 1, index))];
+    }
+
+    static boolean isHedged(String serviceName) {
+        String enabled = ConfigManager.getProperty("http.hedge." + serviceName + ".enabled");
+        if (enabled == null || enabled.isBlank()) {
+            enabled = ConfigManager.getProperty("http.hedge.enabled");
+        }
+        return "true".equalsIgnoreCase(enabled);
+    }
+
+    /**
+     * Milliseconds after which a hedged request is sent, -1 if the request is not hedged.
+     */
+    static long hedgeDelayMillis(String serviceName) {
+        if (!isHedged(serviceName)) {
+            return -1;
+        }
+        Window window = windows.get(serviceName);
+        int minSamples = ConfigManager.getIntProperty("http.hedge.min_samples", DEFAULT_MIN_SAMPLES);
+        if (window == null || window.snapshot().length < minSamples) {
+            return -1;
+        }
+        return Math.max(ConfigManager.getIntProperty("http.hedge.min_delay_ms", DEFAULT_MIN_DELAY_MS),
+                percentile(serviceName, HEDGE_PERCENTILE));
+    }
+
+    static void clear() {
+        windows.clear();
+    }
+}
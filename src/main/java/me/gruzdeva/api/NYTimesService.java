@@ -1,11 +1,19 @@
 package me.gruzdeva.api;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.NoArgsConstructor;
 import me.gruzdeva.config.ConfigManager;
 
+import java.io.IOException;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 @NoArgsConstructor
 public class NYTimesService implements ApiClient {
@@ -13,7 +21,13 @@ public class NYTimesService implements ApiClient {
     private static final String URL_BASE = ConfigManager.getProperty("nytimes.url.base");
     private static final String URL_MOST_POPULAR = ConfigManager.getProperty("nytimes.url.most_popular");
 
-    private static final Integer[] TIME_PERIODS = {1}; //can 7 and 30, but the results are unnecessarily large
+    // can 7 and 30, but the results are unnecessarily large: the body is buffered in the payload
+    // and the diff builds its tree, so memory grows with the list
+    private static final Integer[] TIME_PERIODS = {1};
+
+    // emit only what changed since the previous poll of the same list instead of the whole list
+    private static final boolean DIFF_ENABLED = !"false".equalsIgnoreCase(ConfigManager.getProperty("nytimes.diff"));
+    private static final Map<Integer, ArticleIndex> articleIndexes = new ConcurrentHashMap<>();
 
     private final Random random = new Random();
 
@@ -23,24 +37,72 @@ public class NYTimesService implements ApiClient {
     }
 
     @Override
-    public String fetchData() throws Exception {
+    public ApiPayload fetchData() throws Exception {
         logger.info("Fetching data from {} service", getServiceName());
         int timePeriod = TIME_PERIODS[random.nextInt(TIME_PERIODS.length)];
-        String result = null;
-
-        JsonNode resultNode = fetchMostViewedArticles(timePeriod);
-        try {
-            result = ApiClient.serializeToJson(resultNode);
-        } catch (JsonProcessingException e) {
-            logger.error("ErrNYT001. Error parsing data from {}: {}", getServiceName(), e.getMessage());
-            throw new IllegalArgumentException("ErrNYT001.", e);
+
+        return fetchMostViewedArticles(timePeriod);
+    }
+
+    @Override
+    public CompletableFuture<ApiPayload> fetchDataAsync() {
+        return fetchDataAsync(ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public CompletableFuture<ApiPayload> fetchDataAsync(Executor executor) {
+        logger.info("Fetching data asynchronously from {} service", getServiceName());
+        int timePeriod = TIME_PERIODS[random.nextInt(TIME_PERIODS.length)];
+
+        return ApiClient.callApiAsync(ApiClient.SERVICE_NYTIMES, getMostViewedUrl(timePeriod))
+                // the diff parses and hashes the whole list, keep it off the I/O threads
+                .thenApplyAsync(payload -> {
+                    try {
+                        return toChanges(payload, timePeriod);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+    }
+
+    public static ApiPayload fetchMostViewedArticles(int timePeriod) throws Exception{
+        return toChanges(ApiClient.callApi(ApiClient.SERVICE_NYTIMES, getMostViewedUrl(timePeriod)), timePeriod);
+    }
+
+    /**
+     * Replaces the full "results" list with a "changes" list of the articles that are new, changed,
+     * moved or removed since the previous poll of the same period. Returns a not-modified payload
+     * if nothing changed. The list becomes the reference for the next poll when the payload is committed.
+     */
+    private static ApiPayload toChanges(ApiPayload payload, int timePeriod) throws IOException {
+        if (!DIFF_ENABLED || payload == null || payload.isNotModified()) {
+            return payload;
+        }
+        JsonNode tree = payload.getTree();
+        JsonNode results = tree == null ? null : tree.get("results");
+        if (results == null || !results.isArray()) {
+            logger.warn("ErrNYTimes001. No 'results' array to compare, the response is passed on unchanged");
+            return payload;
+        }
+
+        ArticleIndex.Changes diff = articleIndexes.computeIfAbsent(timePeriod, period -> new ArticleIndex())
+                .diff((ArrayNode) results);
+        ArrayNode changes = diff.getEvents();
+        logger.debug("{} of {} most viewed articles ({} days) changed", changes.size(), results.size(), timePeriod);
+        if (changes.isEmpty()) {
+            // the response itself was handled, its validators are still committed
+            return ApiPayload.notModified(payload.getServiceName(), payload.getFetchedAt(), payload.getLatencyMillis())
+                    .withCommit(payload::commit);
         }
-        return result + "\n";
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("period", timePeriod);
+        body.set("changes", changes);
+        return new ApiPayload(payload.getServiceName(), payload.getFetchedAt(), payload.getLatencyMillis(),
+                objectMapper.writeValueAsBytes(body)).withCommit(payload::commit).withCommit(diff::commit);
     }
 
-    public static JsonNode fetchMostViewedArticles(int timePeriod) throws Exception{
-        String url = URL_BASE + URL_MOST_POPULAR + "/viewed/" + timePeriod + ".json?api-key=" + API_KEY;
-        return ApiClient.callApi(url);
+    private static String getMostViewedUrl(int timePeriod) {
+        return URL_BASE + URL_MOST_POPULAR + "/viewed/" + timePeriod + ".json?api-key=" + API_KEY;
     }
 
 }
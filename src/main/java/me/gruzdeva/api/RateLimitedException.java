@@ -0,0 +1,21 @@
+package me.gruzdeva.api;
+
+import lombok.Getter;
+
+/**
+ * The service refused the request because of its quota (429, or 503 with Retry-After).
+ * retryAfterMillis is how long the service asked us to wait, 0 if it did not say.
+ */
+@Getter
+public class RateLimitedException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final String serviceName;
+    private final long retryAfterMillis;
+
+    public RateLimitedException(String serviceName, long retryAfterMillis) {
+        super("ErrApiClient003");
+        this.serviceName = serviceName;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
@@ -0,0 +1,102 @@
+package me.gruzdeva.api;
+
+import me.gruzdeva.config.ConfigManager;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connect, response and total timeouts per service, from http.timeout.&lt;service&gt;.* with http.timeout.* as default.
+ * <ul>
+ *     <li>connect - establishing the TCP/TLS connection</li>
+ *     <li>response - waiting for the response and between packets of the body</li>
+ *     <li>total - the whole exchange, enforced by cancelling the request</li>
+ * </ul>
+ * Connections are per host, so the connect timeout is looked up by the host of the service's base URL.
+ */
+final class ServiceTimeouts {
+    private final static Logger logger = LoggerFactory.getLogger(ServiceTimeouts.class);
+
+    private final static int DEFAULT_CONNECT_MS = 5000;
+    private final static int DEFAULT_RESPONSE_MS = 10000;
+    private final static int DEFAULT_TOTAL_MS = 20000;
+    private final static int DEFAULT_VALIDATE_AFTER_INACTIVITY_SECONDS = 10;
+
+    private final static Map<String, String> serviceByHost = new HashMap<>();
+
+    // cancels requests at their deadline, also used to start hedged requests
+    private final static ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "http-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        registerHost(ApiClient.SERVICE_NYTIMES, "nytimes.url.base");
+        registerHost(ApiClient.SERVICE_CAT_FACTS, "catfacts.url.base");
+        registerHost(ApiClient.SERVICE_WEATHER, "weather.url.base");
+    }
+
+    private ServiceTimeouts() {
+    }
+
+    private static void registerHost(String serviceName, String baseUrlKey) {
+        String baseUrl = ConfigManager.getProperty(baseUrlKey);
+        if (baseUrl == null || baseUrl.isBlank()) {
+            return;
+        }
+        try {
+            String host = URI.create(baseUrl.trim()).getHost();
+            if (host != null) {
+                serviceByHost.put(host.toLowerCase(), serviceName);
+            }
+        } catch (IllegalArgumentException e) {
+            logger.warn("Cannot read the host of {}={}, default timeouts are used for it", baseUrlKey, baseUrl);
+        }
+    }
+
+    private static int timeoutMillis(String serviceName, String name, int defaultValue) {
+        return ConfigManager.getIntProperty("http.timeout." + serviceName + "." + name,
+                ConfigManager.getIntProperty("http.timeout." + name, defaultValue));
+    }
+
+    static RequestConfig requestConfig(String serviceName) {
+        return RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofMilliseconds(timeoutMillis(serviceName, "response_ms", DEFAULT_RESPONSE_MS)))
+                // waiting for a pooled connection counts against the connect budget
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(timeoutMillis(serviceName, "connect_ms", DEFAULT_CONNECT_MS)))
+                .build();
+    }
+
+    /**
+     * Connection settings for the connection manager, resolved per route.
+     */
+    static ConnectionConfig connectionConfig(HttpRoute route) {
+        String serviceName = route == null ? null : serviceByHost.get(route.getTargetHost().getHostName().toLowerCase());
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(timeoutMillis(serviceName, "connect_ms", DEFAULT_CONNECT_MS)))
+                .setSocketTimeout(Timeout.ofMilliseconds(timeoutMillis(serviceName, "response_ms", DEFAULT_RESPONSE_MS)))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(DEFAULT_VALIDATE_AFTER_INACTIVITY_SECONDS))
+                .build();
+    }
+
+    static long totalMillis(String serviceName) {
+        return timeoutMillis(serviceName, "total_ms", DEFAULT_TOTAL_MS);
+    }
+
+    static ScheduledFuture<?> schedule(Runnable action, long delayMillis) {
+        return timer.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
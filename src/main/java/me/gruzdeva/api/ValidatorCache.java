@@ -0,0 +1,79 @@
+package me.gruzdeva.api;
+
+import me.gruzdeva.config.ConfigManager;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpMessage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the ETag and Last-Modified validators of the last successful response per URL,
+ * so the next request can be sent as a conditional one and answered with 304 Not Modified.
+ */
+final class ValidatorCache {
+    private final static boolean ENABLED = !"false".equalsIgnoreCase(ConfigManager.getProperty("http.conditional_requests"));
+
+    private record Validators(String etag, String lastModified) {
+    }
+
+    private final static Map<String, Validators> validators = new ConcurrentHashMap<>();
+
+    private ValidatorCache() {
+    }
+
+    /**
+     * Adds If-None-Match / If-Modified-Since to the request if validators are known for the url.
+     */
+    static void apply(String url, HttpMessage request) {
+        if (!ENABLED) {
+            return;
+        }
+        Validators known = validators.get(url);
+        if (known == null) {
+            return;
+        }
+        if (known.etag() != null) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, known.etag());
+        }
+        if (known.lastModified() != null) {
+            request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, known.lastModified());
+        }
+    }
+
+    /**
+     * Returns the action that stores the validators of a 200 response, or forgets the url if the response
+     * has none. It is run as the commit of the payload, so a response that was never written is fetched
+     * in full again instead of being answered with 304.
+     */
+    static Runnable updateOnCommit(String url, HttpMessage response) {
+        String etag = headerValue(response, HttpHeaders.ETAG);
+        String lastModified = headerValue(response, HttpHeaders.LAST_MODIFIED);
+        return () -> update(url, etag, lastModified);
+    }
+
+    static void update(String url, String etag, String lastModified) {
+        if (!ENABLED) {
+            return;
+        }
+        if (etag == null && lastModified == null) {
+            validators.remove(url);
+        } else {
+            validators.put(url, new Validators(etag, lastModified));
+        }
+    }
+
+    static boolean contains(String url) {
+        return validators.containsKey(url);
+    }
+
+    static void clear() {
+        validators.clear();
+    }
+
+    private static String headerValue(HttpMessage message, String name) {
+        Header header = message.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+}
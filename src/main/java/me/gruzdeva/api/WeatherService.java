@@ -1,10 +1,10 @@
 package me.gruzdeva.api;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import lombok.NoArgsConstructor;
 import me.gruzdeva.config.ConfigManager;
 
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 @NoArgsConstructor
 public class WeatherService implements ApiClient {
@@ -27,28 +27,32 @@ public class WeatherService implements ApiClient {
     }
 
     @Override
-    public String fetchData() throws Exception {
+    public ApiPayload fetchData() throws Exception {
         logger.info("Fetching data from WeatherStack service");
         String query = POSSIBLE_CITIES[random.nextInt(POSSIBLE_CITIES.length)];
-        String result = null;
-
-        JsonNode resultNode = fetchCurrentWeather(query);
-        try {
-            result = ApiClient.serializeToJson(resultNode);
-        } catch (Exception e) {
-            logger.error("ErrWeather001. Error parsing data from WeatherStack: {}", e.getMessage());
-            throw new IllegalArgumentException("ErrWeather001.", e);
-        }
-        return result + "\n";
+
+        return fetchCurrentWeather(query);
+    }
+
+    @Override
+    public CompletableFuture<ApiPayload> fetchDataAsync() {
+        logger.info("Fetching data asynchronously from WeatherStack service");
+        String query = POSSIBLE_CITIES[random.nextInt(POSSIBLE_CITIES.length)];
+
+        return ApiClient.callApiAsync(ApiClient.SERVICE_WEATHER, getCurrentWeatherUrl(query));
+    }
+
+    public static ApiPayload fetchCurrentWeather(String query) throws Exception {
+        return ApiClient.callApi(ApiClient.SERVICE_WEATHER, getCurrentWeatherUrl(query));
     }
 
-    public static JsonNode fetchCurrentWeather(String query) throws Exception {
+    private static String getCurrentWeatherUrl(String query) {
         // StringBuilder instead of string concatenation for performance (because of multiple appends)
         StringBuilder url = new StringBuilder();
         url.append(URL_BASE)
             .append(URL_CURRENT)
             .append("?access_key=").append(API_KEY)
             .append("&query=").append(query);
-        return ApiClient.callApi(url.toString());
+        return url.toString();
     }
 }
@@ -31,11 +31,54 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * A system property of the same name (-Dkey=value) takes precedence over config.properties,
+     * so single settings can be changed for one run without editing the file.
+     */
     public static String getProperty(String key) {
         if (!initialized) {
             logger.error("ErrConfig003. Configuration not initialized when requesting property: {}", key);
             throw new RuntimeException("ErrConfig003");
         }
-        return properties.getProperty(key);
+        String override = key.isEmpty() ? null : System.getProperty(key);
+        return override != null ? override : properties.getProperty(key);
     }
-}
\ No newline at end of file
+
+    public static int getIntProperty(String key, int defaultValue) {
+        String value = getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.error("ErrConfig004. Property {} is not a valid integer: {}", key, value);
+            throw new RuntimeException("ErrConfig004", e);
+        }
+    }
+
+    /**
+     * Like {@link #getIntProperty(String, int)}, a value outside [min, max] is rejected.
+     */
+    public static int getIntProperty(String key, int defaultValue, int min, int max) {
+        int value = getIntProperty(key, defaultValue);
+        if (value < min || value > max) {
+            logger.error("ErrConfig006. Property {} must be between {} and {}: {}", key, min, max, value);
+            throw new RuntimeException("ErrConfig006");
+        }
+        return value;
+    }
+
+    public static double getDoubleProperty(String key, double defaultValue) {
+        String value = getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            logger.error("ErrConfig005. Property {} is not a valid number: {}", key, value);
+            throw new RuntimeException("ErrConfig005", e);
+        }
+    }
+}
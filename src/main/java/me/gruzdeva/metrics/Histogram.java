@@ -0,0 +1,145 @@
+package me.gruzdeva.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with a fixed number of log-linear buckets, in the style of HdrHistogram:
+ * every power of two is split into 16 linear sub-buckets, so a recorded value is reported within about 6%.
+ * Recording is a few atomic increments without locks or allocation, values are in nanoseconds
+ * and capped at about 73 minutes.
+ */
+public final class Histogram {
+    private final static int SUB_BUCKET_BITS = 5;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private final static int MAX_BITS = 42;
+    private final static long MAX_VALUE = (1L << MAX_BITS) - 1;
+    final static int BUCKETS = SUB_BUCKETS + (MAX_BITS - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + subBucket - HALF_SUB_BUCKETS;
+    }
+
+    /**
+     * Largest value that falls into the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Adds the values recorded by other, e.g. to report the latencies of several services together.
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = other.counts.get(i);
+            if (bucketCount > 0) {
+                counts.addAndGet(i, bucketCount);
+            }
+        }
+        count.add(other.getCount());
+        sum.add(other.getSum());
+        max.accumulateAndGet(other.getMax(), Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the value below which the given fraction (0..1) of the recorded values fall, 0 if nothing was recorded.
+     * Values recorded concurrently may or may not be included.
+     */
+    public long percentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Fills cumulative with the number of recorded values at or below each of the ascending upperBounds
+     * and returns the total number of values, without allocating. A bucket that straddles a bound is counted
+     * with the next bound, so the counts are accurate within the bucket precision.
+     */
+    long cumulativeCounts(long[] upperBounds, long[] cumulative) {
+        int bound = 0;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long highest = highestValueOf(i);
+            while (bound < upperBounds.length && highest > upperBounds[bound]) {
+                cumulative[bound++] = seen;
+            }
+            seen += counts.get(i);
+        }
+        while (bound < upperBounds.length) {
+            cumulative[bound++] = seen;
+        }
+        return seen;
+    }
+
+    public HistogramSnapshot snapshot() {
+        long recorded = getCount();
+        return new HistogramSnapshot(recorded,
+                recorded == 0 ? 0 : toMillis(getSum()) / recorded,
+                toMillis(percentile(0.5)),
+                toMillis(percentile(0.9)),
+                toMillis(percentile(0.99)),
+                toMillis(percentile(0.999)),
+                toMillis(getMax()));
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
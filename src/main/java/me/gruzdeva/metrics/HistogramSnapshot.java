@@ -0,0 +1,31 @@
+package me.gruzdeva.metrics;
+
+import lombok.Getter;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of a {@link Histogram} in milliseconds, shown by JMX clients as a composite attribute.
+ */
+@Getter
+public final class HistogramSnapshot {
+    private final long count;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p90Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+
+    @ConstructorProperties({"count", "meanMillis", "p50Millis", "p90Millis", "p99Millis", "p999Millis", "maxMillis"})
+    public HistogramSnapshot(long count, double meanMillis, double p50Millis, double p90Millis, double p99Millis,
+                             double p999Millis, double maxMillis) {
+        this.count = count;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p90Millis = p90Millis;
+        this.p99Millis = p99Millis;
+        this.p999Millis = p999Millis;
+        this.maxMillis = maxMillis;
+    }
+}
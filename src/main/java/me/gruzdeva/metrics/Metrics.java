@@ -0,0 +1,125 @@
+package me.gruzdeva.metrics;
+
+import me.gruzdeva.config.ConfigManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * Registry of the application's metrics. Every metrics object is also published as an MXBean
+ * in the me.gruzdeva domain of the platform MBean server, unless metrics.jmx is false.
+ */
+public final class Metrics {
+    private final static Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    private final static String DOMAIN = "me.gruzdeva";
+
+    private final static Map<String, ServiceMetrics> services = new ConcurrentHashMap<>();
+    private final static Map<String, WriterMetrics> writers = new ConcurrentHashMap<>();
+    private static volatile PoolerMetrics pooler;
+
+    private Metrics() {
+    }
+
+    public static ServiceMetrics service(String serviceName) {
+        return services.computeIfAbsent(String.valueOf(serviceName), name -> {
+            ServiceMetrics metrics = new ServiceMetrics(name);
+            register(objectName("Service", name), metrics);
+            return metrics;
+        });
+    }
+
+    /**
+     * Creates the metrics of a newly opened writer, replacing those of an earlier writer of the same output.
+     */
+    public static WriterMetrics writer(String outputName, IntSupplier backlog) {
+        WriterMetrics metrics = new WriterMetrics(outputName, backlog);
+        writers.put(outputName, metrics);
+        register(objectName("Writer", outputName), metrics);
+        return metrics;
+    }
+
+    /**
+     * Removes the metrics of a closed writer, unless they were replaced already.
+     */
+    public static void remove(WriterMetrics metrics) {
+        if (writers.remove(metrics.getOutputName(), metrics)) {
+            unregister(objectName("Writer", metrics.getOutputName()));
+        }
+    }
+
+    public static void setPooler(PoolerMetrics metrics) {
+        pooler = metrics;
+        register(objectName("Pooler", null), metrics);
+    }
+
+    public static void removePooler(PoolerMetrics metrics) {
+        if (pooler == metrics) {
+            pooler = null;
+            unregister(objectName("Pooler", null));
+        }
+    }
+
+    public static Collection<ServiceMetrics> getServices() {
+        return Collections.unmodifiableCollection(services.values());
+    }
+
+    public static Collection<WriterMetrics> getWriters() {
+        return Collections.unmodifiableCollection(writers.values());
+    }
+
+    /**
+     * Returns null while no pooler is running.
+     */
+    public static PoolerMetrics getPooler() {
+        return pooler;
+    }
+
+    private static boolean isJmxEnabled() {
+        return !"false".equalsIgnoreCase(ConfigManager.getProperty("metrics.jmx"));
+    }
+
+    private static ObjectName objectName(String type, String name) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type + (name == null ? "" : ",name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("ErrMetrics001." + name, e);
+        }
+    }
+
+    private static void register(ObjectName objectName, Object mbean) {
+        if (!isJmxEnabled()) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            // metrics are still recorded, they are only not visible over JMX
+            logger.warn("ErrMetrics001. Error registering {}: {}", objectName, e.getMessage());
+        }
+    }
+
+    private static void unregister(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("ErrMetrics001. Error unregistering {}: {}", objectName, e.getMessage());
+        }
+    }
+}
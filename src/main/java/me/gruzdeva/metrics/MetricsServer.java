@@ -0,0 +1,97 @@
+package me.gruzdeva.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import me.gruzdeva.config.ConfigManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Optional HTTP endpoint serving the metrics for Prometheus at /metrics, enabled with metrics.http.enabled.
+ * Scrapes are answered by a single daemon thread, so they never take a worker away from the pooler.
+ */
+public final class MetricsServer {
+    private final static Logger logger = LoggerFactory.getLogger(MetricsServer.class);
+
+    private final static String DEFAULT_HOST = "127.0.0.1";
+    private final static int DEFAULT_PORT = 9464;
+    private final static String PATH = "/metrics";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // reused for every scrape, only touched by the single metrics-http thread
+    private final PrometheusExporter exporter = new PrometheusExporter();
+
+    private MetricsServer(HttpServer server) {
+        this.server = server;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Starts the endpoint if it is enabled. Returns null if it is disabled or cannot be started,
+     * the application keeps running without it.
+     */
+    public static MetricsServer startIfEnabled() {
+        if (!"true".equalsIgnoreCase(ConfigManager.getProperty("metrics.http.enabled"))) {
+            return null;
+        }
+        String host = ConfigManager.getProperty("metrics.http.host");
+        return start(host == null || host.isBlank() ? DEFAULT_HOST : host.trim(),
+                ConfigManager.getIntProperty("metrics.http.port", DEFAULT_PORT));
+    }
+
+    static MetricsServer start(String host, int port) {
+        try {
+            MetricsServer metricsServer = new MetricsServer(HttpServer.create(new InetSocketAddress(host, port), 0));
+            metricsServer.server.start();
+            logger.info("Serving metrics at http://{}:{}{}", host, metricsServer.getPort(), PATH);
+            return metricsServer;
+        } catch (IOException e) {
+            logger.error("ErrMetrics002. Error starting the metrics endpoint on {}:{}: {}", host, port, e.getMessage());
+            return null;
+        }
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", PrometheusExporter.CONTENT_TYPE);
+            exporter.render();
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, exporter.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                exporter.writeTo(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package me.gruzdeva.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Gauges of the task pooler, read from the pooler whenever they are queried.
+ */
+@AllArgsConstructor
+public final class PoolerMetrics implements PoolerMetricsMXBean {
+    @Getter
+    private final String mode;
+    private final IntSupplier queueDepth;
+    private final IntSupplier activeWorkers;
+    private final IntSupplier inFlight;
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return activeWorkers.getAsInt();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.getAsInt();
+    }
+}
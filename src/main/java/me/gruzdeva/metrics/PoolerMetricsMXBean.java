@@ -0,0 +1,23 @@
+package me.gruzdeva.metrics;
+
+/**
+ * Published as me.gruzdeva:type=Pooler.
+ */
+public interface PoolerMetricsMXBean {
+    String getMode();
+
+    /**
+     * Tasks that are due and wait for a worker.
+     */
+    int getQueueDepth();
+
+    /**
+     * Workers currently fetching or processing a task.
+     */
+    int getActiveWorkers();
+
+    /**
+     * Requests sent and not answered yet, only counted in async mode.
+     */
+    int getInFlight();
+}
@@ -0,0 +1,265 @@
+package me.gruzdeva.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders the registered metrics in the Prometheus text exposition format (version 0.0.4).
+ * The text is written straight into a byte buffer that is kept between scrapes, numbers are formatted
+ * without creating strings, so a scrape allocates next to nothing. Not thread safe, one scrape at a time.
+ */
+final class PrometheusExporter {
+    final static String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final static String PREFIX = "apiscrapper_";
+    private final static long[] BUCKET_BOUNDS_NANOS = {
+            1_000_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L, 250_000_000L,
+            500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L};
+    private final static long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private byte[] buffer = new byte[16 * 1024];
+    private int size;
+    private final long[] cumulative = new long[BUCKET_BOUNDS_NANOS.length];
+
+    void render() {
+        size = 0;
+        writeServices();
+        writeWriters();
+        writePooler();
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void writeServices() {
+        header("requests_total", "counter", "Requests sent to the service.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            sample("requests_total", "service", service.getServiceName(), service.getRequests());
+        }
+        header("request_errors_total", "counter", "Requests that failed.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            sample("request_errors_total", "service", service.getServiceName(), service.getErrors());
+        }
+        header("errors_total", "counter", "Logged errors per error code.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            for (Map.Entry<String, LongAdder> entry : service.getErrorCodeCounters().entrySet()) {
+                name("errors_total").label('{', "service", service.getServiceName())
+                        .label(',', "code", entry.getKey()).ascii("} ").number(entry.getValue().sum()).newline();
+            }
+        }
+        header("not_modified_total", "counter", "Requests answered with 304 Not Modified.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            sample("not_modified_total", "service", service.getServiceName(), service.getNotModified());
+        }
+        header("fetched_bytes_total", "counter", "Response body bytes fetched.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            sample("fetched_bytes_total", "service", service.getServiceName(), service.getBytesFetched());
+        }
+        header("processed_payloads_total", "counter", "Payloads with new data handed to the writer.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            sample("processed_payloads_total", "service", service.getServiceName(), service.getPayloadsProcessed());
+        }
+        header("dedupe_checked_total", "counter", "Payloads checked for duplicates before writing.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            sample("dedupe_checked_total", "service", service.getServiceName(), service.getDuplicatesChecked());
+        }
+        header("dedupe_dropped_total", "counter", "Payloads dropped as duplicates of recently written data.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            sample("dedupe_dropped_total", "service", service.getServiceName(), service.getDuplicatesDropped());
+        }
+        header("fetch_duration_seconds", "histogram", "Time from sending the request until the body is read.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            histogram("fetch_duration_seconds", "service", service.getServiceName(), service.getFetchHistogram());
+        }
+        header("parse_duration_seconds", "histogram", "Time to read the JSON of a payload.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            histogram("parse_duration_seconds", "service", service.getServiceName(), service.getParseHistogram());
+        }
+        header("process_duration_seconds", "histogram", "Time to parse, convert and enqueue a payload.");
+        for (ServiceMetrics service : Metrics.getServices()) {
+            histogram("process_duration_seconds", "service", service.getServiceName(), service.getProcessHistogram());
+        }
+    }
+
+    private void writeWriters() {
+        header("writer_backlog", "gauge", "Records waiting in the writer queue.");
+        for (WriterMetrics writer : Metrics.getWriters()) {
+            sample("writer_backlog", "output", writer.getOutputName(), writer.getBacklog());
+        }
+        header("written_records_total", "counter", "Records written to the output.");
+        for (WriterMetrics writer : Metrics.getWriters()) {
+            sample("written_records_total", "output", writer.getOutputName(), writer.getRecordsWritten());
+        }
+        header("written_bytes_total", "counter", "Bytes written to the output, before compression.");
+        for (WriterMetrics writer : Metrics.getWriters()) {
+            sample("written_bytes_total", "output", writer.getOutputName(), writer.getBytesWritten());
+        }
+        header("write_duration_seconds", "histogram", "Time to write one batch, fsync included.");
+        for (WriterMetrics writer : Metrics.getWriters()) {
+            histogram("write_duration_seconds", "output", writer.getOutputName(), writer.getWriteHistogram());
+        }
+    }
+
+    private void writePooler() {
+        PoolerMetrics pooler = Metrics.getPooler();
+        if (pooler == null) {
+            return;
+        }
+        header("task_queue_depth", "gauge", "Due tasks waiting for a worker.");
+        name("task_queue_depth").ascii(" ").number(pooler.getQueueDepth()).newline();
+        header("active_workers", "gauge", "Workers fetching or processing a task.");
+        name("active_workers").ascii(" ").number(pooler.getActiveWorkers()).newline();
+        header("requests_in_flight", "gauge", "Async requests sent and not answered yet.");
+        name("requests_in_flight").ascii(" ").number(pooler.getInFlight()).newline();
+    }
+
+    private void header(String name, String type, String help) {
+        ascii("# HELP ").name(name).ascii(" ").ascii(help).newline();
+        ascii("# TYPE ").name(name).ascii(" ").ascii(type).newline();
+    }
+
+    private void sample(String name, String labelName, String labelValue, long value) {
+        name(name).label('{', labelName, labelValue).ascii("} ").number(value).newline();
+    }
+
+    private void histogram(String name, String labelName, String labelValue, Histogram histogram) {
+        long count = histogram.cumulativeCounts(BUCKET_BOUNDS_NANOS, cumulative);
+        for (int i = 0; i < BUCKET_BOUNDS_NANOS.length; i++) {
+            name(name).ascii("_bucket").label('{', labelName, labelValue).ascii(",le=\"")
+                    .seconds(BUCKET_BOUNDS_NANOS[i]).ascii("\"} ").number(cumulative[i]).newline();
+        }
+        name(name).ascii("_bucket").label('{', labelName, labelValue).ascii(",le=\"+Inf\"} ").number(count).newline();
+        name(name).ascii("_sum").label('{', labelName, labelValue).ascii("} ").seconds(histogram.getSum()).newline();
+        name(name).ascii("_count").label('{', labelName, labelValue).ascii("} ").number(count).newline();
+    }
+
+    private PrometheusExporter name(String name) {
+        return ascii(PREFIX).ascii(name);
+    }
+
+    /**
+     * Appends name="value", the value escaped as the format requires.
+     */
+    private PrometheusExporter label(char separator, String name, String value) {
+        ensure(1);
+        buffer[size++] = (byte) separator;
+        ascii(name).ascii("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> ascii("\\\\");
+                case '"' -> ascii("\\\"");
+                case '\n' -> ascii("\\n");
+                default -> utf8(value, i);
+            }
+            if (Character.isHighSurrogate(c) && i + 1 < value.length()) {
+                i++;
+            }
+        }
+        return ascii("\"");
+    }
+
+    private void utf8(String value, int index) {
+        int codePoint = value.codePointAt(index);
+        ensure(4);
+        if (codePoint < 0x80) {
+            buffer[size++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            buffer[size++] = (byte) (0xC0 | codePoint >> 6);
+            buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            buffer[size++] = (byte) (0xE0 | codePoint >> 12);
+            buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            buffer[size++] = (byte) (0xF0 | codePoint >> 18);
+            buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+        }
+    }
+
+    /**
+     * Appends text that is known to be ASCII: metric names, help texts, syntax.
+     */
+    private PrometheusExporter ascii(String text) {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    private PrometheusExporter number(long value) {
+        ensure(20);
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int start = size;
+        do {
+            buffer[size++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // digits were appended backwards
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return this;
+    }
+
+    /**
+     * Appends nanoseconds as seconds with up to 9 decimals, trailing zeros dropped.
+     */
+    private PrometheusExporter seconds(long nanos) {
+        number(nanos / NANOS_PER_SECOND);
+        long fraction = nanos % NANOS_PER_SECOND;
+        if (fraction == 0) {
+            return this;
+        }
+        ensure(10);
+        buffer[size++] = '.';
+        int digits = 9;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[size + i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    private PrometheusExporter newline() {
+        ensure(1);
+        buffer[size++] = '\n';
+        return this;
+    }
+
+    private void ensure(int bytes) {
+        if (size + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+
+    /**
+     * The rendered text, for tests.
+     */
+    String text() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,158 @@
+package me.gruzdeva.metrics;
+
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters and latencies of one service, recorded by the client and the data processor.
+ */
+public final class ServiceMetrics implements ServiceMetricsMXBean {
+    @Getter
+    private final String serviceName;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder bytesFetched = new LongAdder();
+    private final LongAdder payloadsProcessed = new LongAdder();
+    private final LongAdder processErrors = new LongAdder();
+    private final LongAdder duplicatesChecked = new LongAdder();
+    private final LongAdder duplicatesDropped = new LongAdder();
+    // occurrences of every error code logged for the service
+    private final Map<String, LongAdder> errorCodes = new ConcurrentHashMap<>();
+    @Getter
+    private final Histogram fetchHistogram = new Histogram();
+    @Getter
+    private final Histogram parseHistogram = new Histogram();
+    @Getter
+    private final Histogram processHistogram = new Histogram();
+
+    ServiceMetrics(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public void onRequest() {
+        requests.increment();
+    }
+
+    public void onResponse(long nanos, long bytes) {
+        fetchHistogram.record(nanos);
+        bytesFetched.add(bytes);
+    }
+
+    public void onNotModified(long nanos) {
+        fetchHistogram.record(nanos);
+        notModified.increment();
+    }
+
+    /**
+     * A request failed with the given error code.
+     */
+    public void onError(String code) {
+        errors.increment();
+        countError(code);
+    }
+
+    /**
+     * An error code was logged for the service, without counting it as a failed request.
+     */
+    public void countError(String code) {
+        errorCodes.computeIfAbsent(code, c -> new LongAdder()).increment();
+    }
+
+    /**
+     * The JSON of a payload was read, into a tree or token by token into rows.
+     */
+    public void onParsed(long nanos) {
+        parseHistogram.record(nanos);
+    }
+
+    public void onProcessed(long nanos) {
+        processHistogram.record(nanos);
+        payloadsProcessed.increment();
+    }
+
+    public void onProcessError() {
+        processErrors.increment();
+        countError("ErrProcess001");
+    }
+
+    /**
+     * A payload was checked by the deduplication of the output, and dropped if it was a duplicate.
+     */
+    public void onDuplicateCheck(boolean dropped) {
+        duplicatesChecked.increment();
+        if (dropped) {
+            duplicatesDropped.increment();
+        }
+    }
+
+    Map<String, LongAdder> getErrorCodeCounters() {
+        return errorCodes;
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getNotModified() {
+        return notModified.sum();
+    }
+
+    @Override
+    public long getBytesFetched() {
+        return bytesFetched.sum();
+    }
+
+    @Override
+    public long getPayloadsProcessed() {
+        return payloadsProcessed.sum();
+    }
+
+    @Override
+    public long getProcessErrors() {
+        return processErrors.sum();
+    }
+
+    @Override
+    public long getDuplicatesChecked() {
+        return duplicatesChecked.sum();
+    }
+
+    @Override
+    public long getDuplicatesDropped() {
+        return duplicatesDropped.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCodes() {
+        Map<String, Long> counts = new TreeMap<>();
+        errorCodes.forEach((code, count) -> counts.put(code, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public HistogramSnapshot getFetchLatency() {
+        return fetchHistogram.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getParseLatency() {
+        return parseHistogram.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getProcessLatency() {
+        return processHistogram.snapshot();
+    }
+}
@@ -0,0 +1,49 @@
+package me.gruzdeva.metrics;
+
+import java.util.Map;
+
+/**
+ * Published as me.gruzdeva:type=Service,name=&lt;service&gt;.
+ */
+public interface ServiceMetricsMXBean {
+    long getRequests();
+
+    long getErrors();
+
+    long getNotModified();
+
+    long getBytesFetched();
+
+    long getPayloadsProcessed();
+
+    long getProcessErrors();
+
+    /**
+     * Payloads checked by the deduplication of the output (output.dedupe), 0 when it is off.
+     */
+    long getDuplicatesChecked();
+
+    long getDuplicatesDropped();
+
+    /**
+     * Occurrences per error code, e.g. ErrApiClient002.
+     */
+    Map<String, Long> getErrorCodes();
+
+    /**
+     * From sending the request until the body is read.
+     */
+    HistogramSnapshot getFetchLatency();
+
+    /**
+     * Reading the JSON of a payload: building its tree, or reading its tokens into rows for CSV and columnar
+     * output (the rows are handed on as they are read, so this includes converting them). Part of the processing,
+     * but also recorded for the NYTimes diff, which parses the response before it reaches the output.
+     */
+    HistogramSnapshot getParseLatency();
+
+    /**
+     * Parsing the payload, converting it to the output format and handing the records to the writer.
+     */
+    HistogramSnapshot getProcessLatency();
+}
@@ -0,0 +1,57 @@
+package me.gruzdeva.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Throughput and batch latency of one output writer.
+ */
+public final class WriterMetrics implements WriterMetricsMXBean {
+    @Getter
+    private final String outputName;
+    private final IntSupplier backlog;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    @Getter
+    private final Histogram writeHistogram = new Histogram();
+
+    WriterMetrics(String outputName, IntSupplier backlog) {
+        this.outputName = outputName;
+        this.backlog = backlog;
+    }
+
+    public void onBatch(long nanos, int recordCount, long byteCount) {
+        writeHistogram.record(nanos);
+        batches.increment();
+        records.add(recordCount);
+        bytes.add(byteCount);
+    }
+
+    @Override
+    public int getBacklog() {
+        return backlog.getAsInt();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getRecordsWritten() {
+        return records.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytes.sum();
+    }
+
+    @Override
+    public HistogramSnapshot getWriteLatency() {
+        return writeHistogram.snapshot();
+    }
+}
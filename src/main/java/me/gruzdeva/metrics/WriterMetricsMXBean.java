@@ -0,0 +1,22 @@
+package me.gruzdeva.metrics;
+
+/**
+ * Published as me.gruzdeva:type=Writer,name=&lt;output&gt;.
+ */
+public interface WriterMetricsMXBean {
+    /**
+     * Records waiting in the writer queue.
+     */
+    int getBacklog();
+
+    long getBatches();
+
+    long getRecordsWritten();
+
+    long getBytesWritten();
+
+    /**
+     * Writing one batch to the file, including the fsync if the policy asks for one.
+     */
+    HistogramSnapshot getWriteLatency();
+}
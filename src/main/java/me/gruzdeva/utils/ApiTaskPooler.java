@@ -1,32 +1,117 @@
 package me.gruzdeva.utils;
 
 import me.gruzdeva.api.ApiClient;
+import me.gruzdeva.api.ApiPayload;
+import me.gruzdeva.api.RateLimitedException;
+import me.gruzdeva.config.ConfigManager;
+import me.gruzdeva.metrics.Metrics;
+import me.gruzdeva.metrics.PoolerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ApiTaskPooler {
     private final static Logger logger = LoggerFactory.getLogger(ApiTaskPooler.class);
 
+    private final static int DEFAULT_MAX_IN_FLIGHT = 256;
+    private final static int DEFAULT_RETRY_MAX_ATTEMPTS = 2;
+    private final static int DEFAULT_RETRY_BASE_MS = 500;
+    private final static int DEFAULT_RETRY_MAX_MS = 10000;
+    private final static int DEFAULT_BREAKER_FAILURE_THRESHOLD = 5;
+    private final static int DEFAULT_BREAKER_OPEN_MS = 30000;
+
+    /**
+     * BLOCKING - every worker thread fetches and processes one task at a time.
+     * ASYNC - a single dispatcher thread starts non-blocking fetches, the workers only process responses.
+     * VIRTUAL - every due task runs on its own virtual thread (Java 21+), maxThreads is ignored.
+     */
+    public enum Mode {
+        BLOCKING, ASYNC, VIRTUAL;
+
+        public static Mode fromString(String mode) {
+            if (mode == null || mode.isBlank()) {
+                return BLOCKING;
+            }
+            return Mode.valueOf(mode.trim().toUpperCase());
+        }
+    }
+
     private final int maxThreads;
+    private final Mode mode;
     private final ExecutorService executor;
+    // only holds tasks that are due, waiting tasks are kept by the scheduler
     private final BlockingQueue<ServiceTask> taskQueue;
+    private final ScheduledExecutorService scheduler;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    // workers currently fetching or processing a task
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final PoolerMetrics metrics;
+    // per service, empty if the service has no configured rate limit
+    private final Map<String, Optional<TokenBucket>> rateLimits = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final int retryMaxAttempts = ConfigManager.getIntProperty("retry.max_attempts", DEFAULT_RETRY_MAX_ATTEMPTS);
+    private final long retryBaseMillis = ConfigManager.getIntProperty("retry.base_ms", DEFAULT_RETRY_BASE_MS);
+    private final long retryMaxMillis = ConfigManager.getIntProperty("retry.max_ms", DEFAULT_RETRY_MAX_MS);
+    private final int breakerFailureThreshold = ConfigManager.getIntProperty("breaker.failure_threshold",
+            DEFAULT_BREAKER_FAILURE_THRESHOLD);
+    private final long breakerOpenMillis = ConfigManager.getIntProperty("breaker.open_ms", DEFAULT_BREAKER_OPEN_MS);
+    private Thread dispatcher;
 
     // prevents tasks from being re-added during application shutdown.
     private volatile AtomicBoolean isRunning = new AtomicBoolean(false);
 
     public ApiTaskPooler(int maxThreads) {
+        this(maxThreads, Mode.BLOCKING, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param maxInFlight maximum number of concurrent requests in ASYNC mode, ignored in BLOCKING mode
+     */
+    public ApiTaskPooler(int maxThreads, Mode mode, int maxInFlight) {
         this.maxThreads = maxThreads;
-        this.executor = Executors.newFixedThreadPool(maxThreads);
+        this.mode = mode;
+        this.executor = mode == Mode.VIRTUAL ? newVirtualThreadExecutor(maxThreads) : Executors.newFixedThreadPool(maxThreads);
         this.taskQueue = new LinkedBlockingQueue<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "api-task-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.metrics = new PoolerMetrics(mode.name(), taskQueue::size, activeWorkers::get,
+                () -> this.maxInFlight - inFlight.availablePermits());
         isRunning.set(true);
     }
 
+    /**
+     * The project is compiled for Java 17, so the Java 21 factory is looked up reflectively.
+     * On older runtimes the fixed pool is used instead.
+     */
+    private static ExecutorService newVirtualThreadExecutor(int maxThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("ErrPooler003. Virtual threads are not supported by Java {}, using {} platform threads",
+                    Runtime.version().feature(), maxThreads);
+            return Executors.newFixedThreadPool(maxThreads);
+        }
+    }
+
     public void shutdown() {
         logger.info("Shutting down API task pooler");
         isRunning.set(false);
+        Metrics.removePooler(metrics);
+        scheduler.shutdownNow();
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
         if (executor != null) {
             executor.shutdown();
             try {
@@ -46,20 +131,34 @@ public class ApiTaskPooler {
     }
 
     public void start() {
+        Metrics.setPooler(metrics);
+        if (mode == Mode.ASYNC) {
+            startDispatcher(this::dispatchAsync, "api-async-dispatcher");
+            return;
+        }
+        if (mode == Mode.VIRTUAL) {
+            startDispatcher(this::dispatchVirtual, "api-virtual-dispatcher");
+            return;
+        }
         for (int i = 0; i < maxThreads; i++) {
             executor.submit(this::pollTask);
         }
     }
 
+    private void startDispatcher(Runnable dispatchLoop, String name) {
+        dispatcher = new Thread(dispatchLoop, name);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
     private void pollTask() {
         while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
             try {
                 ServiceTask task = taskQueue.take();
-                executeTask(task);
-
-                if (isRunning.get()) {
-                    taskQueue.put(task);
+                if (!admit(task)) {
+                    continue;
                 }
+                schedule(task, runTask(task));
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -69,31 +168,259 @@ public class ApiTaskPooler {
         }
     }
 
-    private void executeTask(ServiceTask task) {
-        try {
-            ApiClient apiClient = task.getApiClient();
+    private void dispatchVirtual() {
+        while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
+            try {
+                ServiceTask task = taskQueue.take();
+                if (!admit(task)) {
+                    continue;
+                }
+                executor.execute(() -> schedule(task, runTask(task)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RejectedExecutionException e) {
+                logger.debug("Task not started: pooler is shutting down");
+            }
+        }
+    }
 
+    private void dispatchAsync() {
+        while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
+            ServiceTask task = null;
+            boolean acquired = false;
             try {
-                String data = apiClient.fetchData();
-                if (data != null) {
-                    task.getDataProcessor().process(apiClient.getServiceName(), data);
+                task = taskQueue.take();
+                if (!admit(task)) {
+                    continue;
+                }
+                inFlight.acquire();
+                acquired = true;
+                ServiceTask admitted = task;
+                ApiClient apiClient = task.getApiClient();
+
+                CompletableFuture<ApiPayload> fetch = apiClient.fetchDataAsync(executor);
+                fetch
+                        // response processing writes to disk, keep it off the I/O threads
+                        .thenApplyAsync(data -> processData(admitted, data), executor)
+                        .whenComplete((changed, e) -> {
+                            inFlight.release();
+                            long delay;
+                            if (e == null) {
+                                delay = afterRun(admitted, null, null, changed);
+                            } else if (fetch.isCompletedExceptionally()) {
+                                delay = afterRun(admitted, unwrap(e), null, false);
+                            } else {
+                                delay = afterRun(admitted, null, unwrap(e), false);
+                            }
+                            schedule(admitted, delay);
+                        });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // the request was not started: a failed fetch for the breaker and the retries, the task stays scheduled
+                if (acquired) {
+                    inFlight.release();
+                }
+                if (task != null) {
+                    schedule(task, afterRun(task, e, null, false));
                 } else {
-                    logger.warn("ErrPooler001. No data received from {}", apiClient.getServiceName());
+                    logger.error("Error dispatching task: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Checks the service's circuit breaker and takes a token of its rate limit. If the request may not be sent now,
+     * the task is put back until it may and false is returned.
+     */
+    private boolean admit(ServiceTask task) {
+        String serviceName = task.getApiClient().getServiceName();
+        Optional<TokenBucket> rateLimit = getRateLimit(serviceName);
+        long wait = rateLimit.map(TokenBucket::tryAcquire).orElse(0L);
+        if (wait > 0) {
+            logger.debug("Rate limit of {} reached, next request in {} ms", serviceName, wait);
+            schedule(task, wait);
+            return false;
+        }
+        // after the rate limit, a half-open probe must not be admitted and then held back
+        wait = getCircuitBreaker(serviceName).tryAcquire();
+        if (wait > 0) {
+            logger.debug("Circuit breaker of {} is open, next attempt in {} ms", serviceName, wait);
+            schedule(task, wait);
+            return false;
+        }
+        return true;
+    }
+
+    private Optional<TokenBucket> getRateLimit(String serviceName) {
+        return rateLimits.computeIfAbsent(String.valueOf(serviceName), name -> {
+            double perMinute = ConfigManager.getDoubleProperty("ratelimit." + name + ".per_minute", 0);
+            if (perMinute <= 0) {
+                return Optional.empty();
+            }
+            return Optional.of(new TokenBucket(perMinute, ConfigManager.getIntProperty("ratelimit." + name + ".burst", 1)));
+        });
+    }
+
+    private CircuitBreaker getCircuitBreaker(String serviceName) {
+        return circuitBreakers.computeIfAbsent(String.valueOf(serviceName),
+                name -> new CircuitBreaker(name, breakerFailureThreshold, breakerOpenMillis));
+    }
+
+    /**
+     * Records the outcome of a run and returns the delay before the next one.
+     * fetchError is the failure of the request, processError the failure of writing the response.
+     * <p>
+     * A failed request is retried up to retryMaxAttempts times with exponential backoff and jitter, but never later
+     * than the regular interval; every failure also counts for the circuit breaker. A rate limited request
+     * is not a failure of the service, it waits as long as the service asked.
+     */
+    private long afterRun(ServiceTask task, Throwable fetchError, Throwable processError, boolean changed) {
+        String serviceName = task.getApiClient().getServiceName();
+        CircuitBreaker breaker = getCircuitBreaker(serviceName);
+
+        if (fetchError instanceof RateLimitedException rateLimited) {
+            breaker.onSuccess();
+            task.resetRetries();
+            task.onError();
+            return Math.max(task.getInterval(), onRateLimited(task, rateLimited));
+        }
+        if (fetchError != null) {
+            logger.error("ErrPooler002. Error fetching data from {}: {}", serviceName, fetchError.getMessage());
+            Metrics.service(serviceName).countError("ErrPooler002");
+            breaker.onFailure();
+            int attempt = task.nextRetry();
+            if (attempt <= retryMaxAttempts) {
+                long delay = Math.min(task.getInterval(), retryDelay(attempt));
+                logger.info("Retrying {} in {} ms (attempt {} of {})", serviceName, delay, attempt, retryMaxAttempts);
+                return delay;
+            }
+            task.resetRetries();
+            task.onError();
+            return task.getInterval();
+        }
+
+        breaker.onSuccess();
+        task.resetRetries();
+        if (processError != null) {
+            logger.error("ErrPooler002. Error processing data from {}: {}", serviceName, processError.getMessage());
+            Metrics.service(serviceName).countError("ErrPooler002");
+            task.onError();
+        } else if (changed) {
+            task.onChanged();
+        } else {
+            task.onUnchanged();
+        }
+        return task.getInterval();
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the delay is fixed, the other half random,
+     * so retries of many tasks do not hit the service at the same moment.
+     */
+    private long retryDelay(int attempt) {
+        long backoff = Math.min(retryMaxMillis, retryBaseMillis << Math.min(attempt - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * The service asked to wait: pauses its rate limit, if any, and returns the delay before the next request.
+     */
+    private long onRateLimited(ServiceTask task, RateLimitedException e) {
+        logger.warn("ErrPooler004. {} is rate limited, retry after {} ms", task.getApiClient().getServiceName(),
+                e.getRetryAfterMillis());
+        Metrics.service(task.getApiClient().getServiceName()).countError("ErrPooler004");
+        getRateLimit(task.getApiClient().getServiceName()).ifPresent(bucket -> bucket.pause(e.getRetryAfterMillis()));
+        return e.getRetryAfterMillis();
+    }
+
+    /**
+     * Arms the task for its next run. The worker is released right away,
+     * the scheduler hands the task back to the queue when it is due.
+     */
+    private void schedule(ServiceTask task, long delayMillis) {
+        if (!isRunning.get()) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> {
+                if (isRunning.get()) {
+                    taskQueue.add(task);
                 }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // scheduler is already shut down
+            logger.debug("Task for {} not rescheduled: pooler is shutting down", task.getApiClient().getServiceName());
+        }
+    }
+
+    /**
+     * Returns true if the data was new and written.
+     */
+    private boolean processData(ServiceTask task, ApiPayload data) {
+        ApiClient apiClient = task.getApiClient();
+        activeWorkers.incrementAndGet();
+        try {
+            if (data != null) {
+                boolean changed = task.getDataProcessor().process(data);
+                data.commit();
+                return changed;
+            }
+            logger.warn("ErrPooler001. No data received from {}", apiClient.getServiceName());
+            Metrics.service(apiClient.getServiceName()).countError("ErrPooler001");
+            return false;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    private long runTask(ServiceTask task) {
+        activeWorkers.incrementAndGet();
+        try {
+            return executeTask(task);
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Fetches and processes one task. Returns the delay before its next run.
+     */
+    private long executeTask(ServiceTask task) {
+        try {
+            ApiClient apiClient = task.getApiClient();
+            ApiPayload data;
+            try {
+                data = apiClient.fetchData();
             } catch (Exception e) {
-                logger.error("ErrPooler002. Error fetching data from {}: {}", apiClient.getServiceName(), e.getMessage());
-                return;
+                return afterRun(task, e, null, false);
             }
 
             try {
-                Thread.sleep(task.getTimeout());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.warn("Task interrupted: {}", e.getMessage());
+                if (data == null) {
+                    logger.warn("ErrPooler001. No data received from {}", apiClient.getServiceName());
+                    Metrics.service(apiClient.getServiceName()).countError("ErrPooler001");
+                    return afterRun(task, null, null, false);
+                }
+                boolean changed = task.getDataProcessor().process(data);
+                data.commit();
+                return afterRun(task, null, null, changed);
+            } catch (Exception e) {
+                return afterRun(task, null, e, false);
             }
         } catch (Exception e) {
             System.err.println("If you see error code, please contact support (check logs). " + e.getMessage());
         }
+        return task.getInterval();
     }
 
 }
@@ -0,0 +1,265 @@
+package me.gruzdeva.utils;
+
+import me.gruzdeva.metrics.Metrics;
+import me.gruzdeva.metrics.WriterMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Writer stage in front of another sink. Callers only enqueue the record, a dedicated thread
+ * drains the bounded queue and writes whatever has accumulated as one batch (group commit).
+ * When the queue is full, callers wait, so a slow disk slows the producers down instead of exhausting memory.
+ * Records are acknowledged when they are enqueued: the first write error of the writer thread is kept
+ * and thrown by every later write, flush and close.
+ */
+class AsyncWriter implements OutputSink {
+    private final static Logger logger = LoggerFactory.getLogger(AsyncWriter.class);
+
+    private final static long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * BATCH - fsync after every batch.
+     * INTERVAL - fsync at most once per interval, if something was written.
+     * NEVER - leave it to the operating system.
+     */
+    enum FsyncPolicy {
+        BATCH, INTERVAL, NEVER;
+
+        static FsyncPolicy fromString(String policy) {
+            if (policy == null || policy.isBlank()) {
+                return NEVER;
+            }
+            return FsyncPolicy.valueOf(policy.trim().toUpperCase());
+        }
+    }
+
+    private final OutputSink delegate;
+    private final BlockingQueue<byte[]> queue;
+    private final int maxBatch;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final Thread writerThread;
+    private final WriterMetrics metrics;
+
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progress = progressLock.newCondition();
+    // guarded by progressLock
+    private long enqueued;
+    private long written;
+
+    // write holds the read lock from the closed check until the record is enqueued, close takes the write lock,
+    // so no record can be enqueued after the writer thread has seen closed
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    // first error of the writer thread, null while it writes successfully
+    private volatile Throwable failure;
+
+    AsyncWriter(OutputSink delegate, int queueCapacity, int maxBatch, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        this("output", delegate, queueCapacity, maxBatch, fsyncPolicy, fsyncIntervalMillis);
+    }
+
+    /**
+     * @param name name of the output in the writer metrics
+     */
+    AsyncWriter(String name, OutputSink delegate, int queueCapacity, int maxBatch, FsyncPolicy fsyncPolicy,
+                long fsyncIntervalMillis) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.metrics = Metrics.writer(name, this::getBacklog);
+        this.writerThread = new Thread(this::run, "output-writer-" + name);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void write(byte[] record) throws IOException {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                logger.error("ErrWriter002. Write after the writer was closed");
+                throw new IOException("ErrWriter002");
+            }
+            // waits in steps, so a failed writer thread does not leave the caller blocked on a full queue
+            do {
+                checkFailure();
+            } while (!queue.offer(record, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("ErrWriter002", e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        progressLock.lock();
+        try {
+            enqueued++;
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record enqueued before the call has been written.
+     */
+    @Override
+    public void flush() throws IOException {
+        progressLock.lock();
+        try {
+            long target = enqueued;
+            while (written < target && writerThread.isAlive()) {
+                progress.await(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("ErrWriter003", e);
+        } finally {
+            progressLock.unlock();
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable error = failure;
+        if (error != null) {
+            throw new IOException("ErrWriter001", error);
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        // the delegate is owned by the writer thread, fsync is driven by the policy there
+        flush();
+    }
+
+    int getBacklog() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("ErrWriter003", e);
+        }
+        checkFailure();
+    }
+
+    private void run() {
+        try {
+            drain();
+        } catch (RuntimeException | Error e) {
+            logger.error("ErrWriter001. Output writer stopped: {}", e.toString());
+            fail(e);
+        } finally {
+            try {
+                delegate.close();
+            } catch (IOException e) {
+                logger.error("ErrWriter001. Error closing output: {}", e.getMessage());
+                fail(e);
+            }
+            Metrics.remove(metrics);
+            signalProgress(0);
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private void drain() {
+        List<byte[]> batch = new ArrayList<>(maxBatch);
+        long lastSync = System.nanoTime();
+        boolean unsynced = false;
+
+        while (true) {
+            byte[] first;
+            try {
+                first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // only close() stops the writer, pending records must not be lost
+                continue;
+            }
+            if (first == null) {
+                if (closed && queue.isEmpty()) {
+                    break;
+                }
+            } else {
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                writeBatch(batch);
+                unsynced = fsyncPolicy != FsyncPolicy.BATCH;
+                batch.clear();
+            }
+
+            if (unsynced && fsyncPolicy == FsyncPolicy.INTERVAL && System.nanoTime() - lastSync >= fsyncIntervalNanos) {
+                sync();
+                lastSync = System.nanoTime();
+                unsynced = false;
+            }
+        }
+
+        if (unsynced && fsyncPolicy != FsyncPolicy.NEVER) {
+            sync();
+        }
+    }
+
+    private void writeBatch(List<byte[]> batch) {
+        long start = System.nanoTime();
+        try {
+            delegate.write(batch);
+            if (fsyncPolicy == FsyncPolicy.BATCH) {
+                delegate.force();
+            }
+            long bytes = 0;
+            for (byte[] record : batch) {
+                bytes += record.length;
+            }
+            metrics.onBatch(System.nanoTime() - start, batch.size(), bytes);
+        } catch (IOException e) {
+            logger.error("ErrWriter001. Error writing {} records: {}", batch.size(), e.getMessage());
+            fail(e);
+        }
+        signalProgress(batch.size());
+    }
+
+    private void sync() {
+        try {
+            delegate.force();
+        } catch (IOException e) {
+            logger.error("ErrWriter001. Error syncing output: {}", e.getMessage());
+            fail(e);
+        }
+    }
+
+    private void signalProgress(int count) {
+        progressLock.lock();
+        try {
+            written += count;
+            progress.signalAll();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package me.gruzdeva.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stops requests to a service that keeps failing.
+ * <ul>
+ *     <li>CLOSED - requests pass, {@code failureThreshold} failures in a row open the breaker</li>
+ *     <li>OPEN - no requests for {@code openMillis}, then the breaker becomes half-open</li>
+ *     <li>HALF_OPEN - a single probe request passes, its success closes the breaker, its failure opens it again</li>
+ * </ul>
+ */
+class CircuitBreaker {
+    private final static Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String serviceName;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    CircuitBreaker(String serviceName, int failureThreshold, long openMillis) {
+        this.serviceName = serviceName;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Returns 0 if a request may be sent now, otherwise how many milliseconds to wait before asking again.
+     */
+    long tryAcquire() {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                long remaining = openedAt + openNanos - System.nanoTime();
+                if (remaining > 0) {
+                    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+                }
+                setState(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probeInFlight) {
+                    // ask again when the probe should have been answered
+                    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(openNanos));
+                }
+                probeInFlight = true;
+            }
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onSuccess() {
+        lock.lock();
+        try {
+            failures = 0;
+            probeInFlight = false;
+            if (state != State.CLOSED) {
+                setState(State.CLOSED);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onFailure() {
+        lock.lock();
+        try {
+            failures++;
+            probeInFlight = false;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+                openedAt = System.nanoTime();
+                setState(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void setState(State newState) {
+        logger.info("Circuit breaker of {}: {} -> {}", serviceName, state, newState);
+        state = newState;
+    }
+}
@@ -0,0 +1,192 @@
+package me.gruzdeva.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the rows of one service and writes them as column blocks in the format read by {@link ColumnarReader}.
+ * A block is written when it reaches the row limit, when the columns change, or on {@link #writeBlock()}.
+ * <p>
+ * Block layout: magic, service name, row count, column count, then for every column its name, encoding,
+ * min/max stats, the data length in bytes and the data, so a reader can skip a column without decoding it.
+ * Numeric columns are stored as longs or doubles only if every value is the text the number is printed as
+ * ({@link Long#toString(long)}, {@link Double#toString(double)}), so the original text of every value can be
+ * restored; otherwise (-0, 1.50, 1e2, an integer beyond the range of a long or mixed with decimals, more digits
+ * than a double keeps) the column is stored as strings.
+ * String columns with repeated values are stored as a dictionary and varint indices, other columns as plain strings.
+ */
+class ColumnBlockWriter implements RowHandler {
+    final static int MAGIC = 0x434F4C31; // "COL1"
+    final static byte TYPE_LONG = 0;
+    final static byte TYPE_DOUBLE = 1;
+    final static byte TYPE_DICTIONARY = 2;
+    final static byte TYPE_STRING = 3;
+
+    private final static Pattern LONG_PATTERN = Pattern.compile("-?(0|[1-9]\\d{0,18})");
+    private final static Pattern NUMBER_PATTERN = Pattern.compile("-?(0|[1-9]\\d*)(\\.\\d+)?([eE][+-]?\\d+)?");
+
+    private final String serviceName;
+    private final OutputSink sink;
+    private final int blockRows;
+    private List<String> columns = List.of();
+    private final List<String[]> rows = new ArrayList<>();
+
+    ColumnBlockWriter(String serviceName, OutputSink sink, int blockRows) {
+        this.serviceName = serviceName;
+        this.sink = sink;
+        this.blockRows = blockRows;
+    }
+
+    @Override
+    public void header(List<String> columns) throws IOException {
+        if (!columns.equals(this.columns)) {
+            writeBlock();
+            this.columns = List.copyOf(columns);
+        }
+    }
+
+    @Override
+    public void row(List<? extends CharSequence> values) throws IOException {
+        String[] row = new String[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i < values.size() && values.get(i) != null ? values.get(i).toString() : "";
+        }
+        rows.add(row);
+        if (rows.size() >= blockRows) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the buffered rows, if any, as one block.
+     */
+    void writeBlock() throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        writeString(out, serviceName);
+        out.writeInt(rows.size());
+        out.writeInt(columns.size());
+        for (int column = 0; column < columns.size(); column++) {
+            writeString(out, columns.get(column));
+            writeColumn(out, column);
+        }
+        rows.clear();
+        sink.write(bytes.toByteArray());
+    }
+
+    private void writeColumn(DataOutputStream out, int column) throws IOException {
+        String[] values = new String[rows.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rows.get(i)[column];
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(data);
+        if (allMatch(values, LONG_PATTERN) && printedAsLong(values)) {
+            long[] numbers = Arrays.stream(values).mapToLong(Long::parseLong).toArray();
+            out.writeByte(TYPE_LONG);
+            out.writeLong(Arrays.stream(numbers).min().orElse(0));
+            out.writeLong(Arrays.stream(numbers).max().orElse(0));
+            for (long number : numbers) {
+                dataOut.writeLong(number);
+            }
+        } else if (allMatch(values, NUMBER_PATTERN) && printedAsDouble(values)) {
+            double[] numbers = Arrays.stream(values).mapToDouble(Double::parseDouble).toArray();
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(Arrays.stream(numbers).min().orElse(0));
+            out.writeDouble(Arrays.stream(numbers).max().orElse(0));
+            for (double number : numbers) {
+                dataOut.writeDouble(number);
+            }
+        } else {
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> entries = new ArrayList<>();
+            String min = values[0];
+            String max = values[0];
+            for (String value : values) {
+                if (dictionary.putIfAbsent(value, entries.size()) == null) {
+                    entries.add(value);
+                }
+                min = value.compareTo(min) < 0 ? value : min;
+                max = value.compareTo(max) > 0 ? value : max;
+            }
+            // a dictionary only pays off when values repeat
+            boolean dictionaryEncoded = entries.size() * 2 <= values.length;
+            out.writeByte(dictionaryEncoded ? TYPE_DICTIONARY : TYPE_STRING);
+            writeString(out, min);
+            writeString(out, max);
+            if (dictionaryEncoded) {
+                dataOut.writeInt(entries.size());
+                for (String entry : entries) {
+                    writeString(dataOut, entry);
+                }
+                for (String value : values) {
+                    writeVarInt(dataOut, dictionary.get(value));
+                }
+            } else {
+                for (String value : values) {
+                    writeString(dataOut, value);
+                }
+            }
+        }
+        out.writeInt(data.size());
+        data.writeTo(out);
+    }
+
+    private static boolean allMatch(String[] values, Pattern pattern) {
+        for (String value : values) {
+            if (!pattern.matcher(value).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean printedAsLong(String[] values) {
+        try {
+            for (String value : values) {
+                if (!Long.toString(Long.parseLong(value)).equals(value)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean printedAsDouble(String[] values) {
+        for (String value : values) {
+            if (!Double.toString(Double.parseDouble(value)).equals(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
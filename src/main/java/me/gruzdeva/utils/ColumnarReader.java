@@ -0,0 +1,167 @@
+package me.gruzdeva.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the blocks written by the "columnar" output format. Only the requested columns are decoded,
+ * the data of the others is skipped, their stats are still available.
+ */
+public class ColumnarReader implements Closeable {
+    private final static Logger logger = LoggerFactory.getLogger(ColumnarReader.class);
+
+    public enum Type {
+        LONG, DOUBLE, DICTIONARY, STRING
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static class Column {
+        private final String name;
+        private final Type type;
+        // Long, Double or String depending on the type
+        private final Object min;
+        private final Object max;
+        // null if the column was not requested
+        private final List<Object> values;
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static class Block {
+        private final String serviceName;
+        private final int rowCount;
+        private final List<Column> columns;
+
+        public Column getColumn(String name) {
+            return columns.stream().filter(column -> column.getName().equals(name)).findFirst().orElse(null);
+        }
+    }
+
+    private final DataInputStream in;
+
+    public ColumnarReader(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * Reads the next block and decodes the given columns, or all of them if the set is null.
+     * Returns null at the end of the input.
+     */
+    public Block next(Set<String> columnNames) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        int magic = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedShort());
+        if (magic != ColumnBlockWriter.MAGIC) {
+            logger.error("ErrColumnar001. Not a column block: {}", Integer.toHexString(magic));
+            throw new IOException("ErrColumnar001");
+        }
+
+        String serviceName = readString(in);
+        int rowCount = in.readInt();
+        int columnCount = in.readInt();
+        List<Column> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            String name = readString(in);
+            byte type = in.readByte();
+            Object min;
+            Object max;
+            switch (type) {
+                case ColumnBlockWriter.TYPE_LONG -> {
+                    min = in.readLong();
+                    max = in.readLong();
+                }
+                case ColumnBlockWriter.TYPE_DOUBLE -> {
+                    min = in.readDouble();
+                    max = in.readDouble();
+                }
+                case ColumnBlockWriter.TYPE_DICTIONARY, ColumnBlockWriter.TYPE_STRING -> {
+                    min = readString(in);
+                    max = readString(in);
+                }
+                default -> {
+                    logger.error("ErrColumnar002. Unknown encoding {} of column {}", type, name);
+                    throw new IOException("ErrColumnar002");
+                }
+            }
+            int length = in.readInt();
+
+            List<Object> values = null;
+            if (columnNames == null || columnNames.contains(name)) {
+                values = readValues(type, rowCount);
+            } else {
+                in.skipNBytes(length);
+            }
+            columns.add(new Column(name, Type.values()[type], min, max, values));
+        }
+        return new Block(serviceName, rowCount, columns);
+    }
+
+    private List<Object> readValues(byte type, int rowCount) throws IOException {
+        List<Object> values = new ArrayList<>(rowCount);
+        switch (type) {
+            case ColumnBlockWriter.TYPE_LONG -> {
+                for (int i = 0; i < rowCount; i++) {
+                    values.add(in.readLong());
+                }
+            }
+            case ColumnBlockWriter.TYPE_DOUBLE -> {
+                for (int i = 0; i < rowCount; i++) {
+                    values.add(in.readDouble());
+                }
+            }
+            case ColumnBlockWriter.TYPE_DICTIONARY -> {
+                String[] dictionary = new String[in.readInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = readString(in);
+                }
+                for (int i = 0; i < rowCount; i++) {
+                    values.add(dictionary[readVarInt(in)]);
+                }
+            }
+            default -> {
+                for (int i = 0; i < rowCount; i++) {
+                    values.add(readString(in));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
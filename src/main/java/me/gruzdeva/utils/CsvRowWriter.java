@@ -0,0 +1,153 @@
+package me.gruzdeva.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes rows as CSV straight into a byte buffer that is reused for every payload: each value is scanned once
+ * and written escaped as UTF-8, without intermediate strings or a character encoder. Complete rows are handed
+ * to the sink in chunks of about chunkSize bytes, so a chunk always ends at a row boundary.
+ * There is one writer per output file; it remembers the header of the segment the rows are currently
+ * appended to, so a header is only written when the segment changes.
+ * Not thread safe, it is used under the lock of its shard.
+ */
+class CsvRowWriter {
+    private final static byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputSink sink;
+    private final int chunkSize;
+    private byte[] buffer;
+    private int size;
+    // header record of the current segment, null before the first one
+    private byte[] currentHeader;
+
+    CsvRowWriter(OutputSink sink, int chunkSize) {
+        this.sink = sink;
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[chunkSize + 1024];
+    }
+
+    /**
+     * Encodes a line on its own, used for the header records.
+     */
+    byte[] encodeLine(List<? extends CharSequence> fields) {
+        int start = size;
+        appendLine(fields);
+        byte[] line = Arrays.copyOfRange(buffer, start, size);
+        size = start;
+        return line;
+    }
+
+    /**
+     * Starts a new segment with the given header record unless the rows already follow a header with the same
+     * content. The header is handed to the sink as a record of its own, so that the segmented sink can recognize it,
+     * start a new file with it and repeat it when it rotates.
+     */
+    void header(byte[] header) throws IOException {
+        if (Arrays.equals(header, currentHeader)) {
+            return;
+        }
+        flush();
+        sink.write(header);
+        currentHeader = header;
+    }
+
+    void row(List<? extends CharSequence> values) throws IOException {
+        appendLine(values);
+        if (size >= chunkSize) {
+            emit();
+        }
+    }
+
+    /**
+     * Hands the pending rows to the sink, called at the end of every payload.
+     */
+    void flush() throws IOException {
+        if (size > 0) {
+            emit();
+        }
+    }
+
+    private void appendLine(List<? extends CharSequence> fields) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                ensureCapacity(1);
+                buffer[size++] = ',';
+            }
+            writeField(fields.get(i));
+        }
+        ensureCapacity(LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, buffer, size, LINE_SEPARATOR.length);
+        size += LINE_SEPARATOR.length;
+    }
+
+    /**
+     * A value that contains a comma, quote or newline is wrapped in quotes and its quotes are doubled.
+     * The value is written as it is scanned; when the first such character shows up, the part written so far
+     * is moved by one byte to make room for the opening quote.
+     */
+    void writeField(CharSequence value) {
+        if (value == null) {
+            return;
+        }
+        int length = value.length();
+        // worst case: 3 bytes per char (a surrogate pair is 4 bytes for 2 chars), 2 per quote, plus the wrapping quotes
+        ensureCapacity(length * 3 + 2);
+        int start = size;
+        boolean quoted = false;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == ',' || c == '"' || c == '\n') {
+                    if (!quoted) {
+                        System.arraycopy(buffer, start, buffer, start + 1, size - start);
+                        buffer[start] = '"';
+                        size++;
+                        quoted = true;
+                    }
+                    if (c == '"') {
+                        buffer[size++] = '"';
+                    }
+                }
+                buffer[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xC0 | c >> 6);
+                buffer[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // an unpaired surrogate cannot be encoded, replaced like String.getBytes does
+                buffer[size++] = '?';
+            } else {
+                buffer[size++] = (byte) (0xE0 | c >> 12);
+                buffer[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        if (quoted) {
+            buffer[size++] = '"';
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (size + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(size + bytes, buffer.length * 2));
+        }
+    }
+
+    private void emit() throws IOException {
+        // the sink may keep the array until it is written, the buffer itself is reused
+        sink.write(Arrays.copyOf(buffer, size));
+        size = 0;
+        if (buffer.length > 2 * chunkSize) {
+            // a single oversized row must not keep its buffer alive
+            buffer = new byte[chunkSize + 1024];
+        }
+    }
+}
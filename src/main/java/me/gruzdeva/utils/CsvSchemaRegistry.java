@@ -0,0 +1,127 @@
+package me.gruzdeva.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Column layout of the CSV output per service. The columns are taken from the first response of a service
+ * and keep their order; the rows of later responses are mapped onto them, whatever order the API returns
+ * the fields in, and columns a response lacks stay empty. A response with columns that are not known yet
+ * appends them at the end and starts a new segment with the extended header.
+ * The header is written when a segment starts, not with every response. Every service has files of its own
+ * and {@link RollingSink} starts a new file with every new header, so each file has exactly one header.
+ */
+class CsvSchemaRegistry {
+    private final static Logger logger = LoggerFactory.getLogger(CsvSchemaRegistry.class);
+
+    private final Map<String, Schema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the handler that writes the rows of one response of the service to the writer.
+     * The handler is reused for every response of the service, it must be used under the lock of the shard.
+     */
+    RowHandler handler(String serviceName, CsvRowWriter writer) {
+        Schema schema = schemas.computeIfAbsent(serviceName, Schema::new);
+        schema.writer = writer;
+        return schema;
+    }
+
+    /**
+     * Whether the record is one of the headers of the service, for a rotating sink to repeat it in a new file.
+     * The record is compared by content with every header of the service, not only the current one: the sink
+     * checks it on the writer thread, when the columns may already have been extended again.
+     */
+    boolean isHeader(String serviceName, byte[] record) {
+        Schema schema = schemas.get(serviceName);
+        if (schema == null) {
+            return false;
+        }
+        for (byte[] header : schema.headers) {
+            if (Arrays.equals(header, record)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Current columns of the service, empty if nothing was written for it yet.
+     */
+    List<String> getColumns(String serviceName) {
+        Schema schema = schemas.get(serviceName);
+        return schema == null ? List.of() : List.copyOf(schema.columns);
+    }
+
+    private class Schema implements RowHandler {
+        private final String serviceName;
+        private final List<String> columns = new ArrayList<>();
+        private final Map<String, Integer> columnIndex = new HashMap<>();
+        private byte[] header;
+        // every header of the service so far, read by the writer thread of the sink
+        private final List<byte[]> headers = new CopyOnWriteArrayList<>();
+        private CsvRowWriter writer;
+
+        // columns of the current response and their position in the schema, kept while the response columns repeat
+        private List<String> responseColumns = List.of();
+        private int[] positions = new int[0];
+        private CharSequence[] row = new CharSequence[0];
+        private List<CharSequence> rowView = List.of();
+
+        Schema(String serviceName) {
+            this.serviceName = serviceName;
+        }
+
+        @Override
+        public void header(List<String> responseColumns) throws IOException {
+            if (header == null || !responseColumns.equals(this.responseColumns)) {
+                map(responseColumns);
+            }
+            writer.header(header);
+        }
+
+        private void map(List<String> responseColumns) {
+            List<String> added = new ArrayList<>();
+            int[] positions = new int[responseColumns.size()];
+            for (int i = 0; i < responseColumns.size(); i++) {
+                String column = responseColumns.get(i);
+                Integer index = columnIndex.get(column);
+                if (index == null) {
+                    index = columns.size();
+                    columns.add(column);
+                    columnIndex.put(column, index);
+                    added.add(column);
+                }
+                positions[i] = index;
+            }
+            if (header == null || !added.isEmpty()) {
+                if (header != null) {
+                    logger.info("CSV columns of service {} extended with {}, starting a new file", serviceName, added);
+                }
+                header = writer.encodeLine(columns);
+                headers.add(header);
+                row = new CharSequence[columns.size()];
+                rowView = Arrays.asList(row);
+            }
+            this.responseColumns = List.copyOf(responseColumns);
+            this.positions = positions;
+        }
+
+        @Override
+        public void row(List<? extends CharSequence> values) throws IOException {
+            Arrays.fill(row, "");
+            for (int i = 0; i < values.size() && i < positions.length; i++) {
+                row[positions[i]] = values.get(i);
+            }
+            writer.row(rowView);
+        }
+    }
+}
@@ -1,19 +1,33 @@
 package me.gruzdeva.utils;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import me.gruzdeva.api.ApiPayload;
+import me.gruzdeva.config.ConfigManager;
+import me.gruzdeva.metrics.Metrics;
+import me.gruzdeva.metrics.ServiceMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.IOException;
 
-public class DataProcessor {
+public class DataProcessor implements Closeable {
     private final static Logger logger = LoggerFactory.getLogger(DataProcessor.class);
 
     private final static String DEFAULT_OUT_DIR = "./result";
@@ -21,23 +35,183 @@ public class DataProcessor {
     private final static String OUT_FILE_NAME = DEFAULT_OUT_DIR + File.separator + OUT_FILE;
     private final static String FORMAT_JSON = "json";
     private final static String FORMAT_CSV = "csv";
-    public final static Set<String> FORMATS = Set.of(FORMAT_JSON, FORMAT_CSV);
+    private final static String FORMAT_NDJSON = "ndjson";
+    private final static String FORMAT_COLUMNAR = "columnar";
+    public final static Set<String> FORMATS = Set.of(FORMAT_JSON, FORMAT_CSV, FORMAT_NDJSON, FORMAT_COLUMNAR);
+
+    private final static int DEFAULT_QUEUE_CAPACITY = 1024;
+    private final static int DEFAULT_MAX_BATCH = 256;
+    private final static int DEFAULT_FSYNC_INTERVAL_MS = 1000;
+    private final static int CSV_CHUNK_SIZE = 64 * 1024;
+    private final static byte[] NDJSON_SUFFIX = {'}', '\n'};
+    private final static int DEFAULT_MMAP_CHUNK_MB = 64;
+    // a mapped region is at most Integer.MAX_VALUE bytes
+    private final static int MAX_MMAP_CHUNK_MB = Integer.MAX_VALUE / (1024 * 1024);
+    private final static int DEFAULT_COLUMNAR_BLOCK_ROWS = 1024;
+    private final static int DEFAULT_DEDUPE_CAPACITY = 10000;
+    private final static String SINK_CHANNEL = "channel";
+    private final static String SINK_MMAP = "mmap";
+    private final static String COMPRESS_NONE = "none";
+    private final static String COMPRESS_GZIP = "gzip";
+    private final static String SINGLE_SHARD = "";
+
+    /**
+     * SINGLE - all services write to one output file. CSV is the exception: each service has its own columns,
+     * so every service gets its own file, as with SHARDED.
+     * SHARDED - every service writes to its own file with its own writer and lock.
+     * SHARDED_MERGED - like SHARDED, the shards are also concatenated into the single output file on close.
+     */
+    public enum Layout {
+        SINGLE, SHARDED, SHARDED_MERGED;
+
+        public static Layout fromString(String layout) {
+            if (layout == null || layout.isBlank()) {
+                return SINGLE;
+            }
+            return Layout.valueOf(layout.trim().toUpperCase());
+        }
+    }
 
     private final String outDir;
     private final String outFileName;
     private final String format;
+    private final Layout layout;
+    private final boolean gzip;
+    private final long rotateMaxBytes;
+    private final long rotateIntervalMillis;
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonRowReader rowReader = new JsonRowReader(objectMapper);
+    private final Map<String, OutputShard> shards = new ConcurrentHashMap<>();
+    // reusable CSV encoders per shard, guarded by the lock of the shard
+    private final Map<OutputShard, CsvRowWriter> csvWriters = new ConcurrentHashMap<>();
+    private final CsvSchemaRegistry csvSchemas = new CsvSchemaRegistry();
+    // pending rows of the columnar format per service, guarded by the lock of the service's shard
+    private final Map<String, ColumnBlockWriter> columnBlocks = new ConcurrentHashMap<>();
+    private final int columnarBlockRows = ConfigManager.getIntProperty("output.columnar.block_rows",
+            DEFAULT_COLUMNAR_BLOCK_ROWS);
+    // null when deduplication is off
+    private final RecordDeduplicator deduplicator = "true".equalsIgnoreCase(ConfigManager.getProperty("output.dedupe"))
+            ? new RecordDeduplicator(objectMapper, ConfigManager.getIntProperty("output.dedupe.capacity", DEFAULT_DEDUPE_CAPACITY))
+            : null;
 
     public DataProcessor(String format) {
         this(format, DEFAULT_OUT_DIR);
     }
 
     public DataProcessor(String format, String outDir) {
+        this(format, outDir, Layout.fromString(ConfigManager.getProperty("output.layout")));
+    }
+
+    public DataProcessor(String format, String outDir, Layout layout) {
         this.format = format;
         this.outDir = outDir;
+        this.layout = layout;
         this.outFileName = outDir + File.separator + OUT_FILE;
-        deleteFileIfExists(Path.of(outFileName + "." + format));
+        this.gzip = isGzipEnabled();
+        this.rotateMaxBytes = ConfigManager.getIntProperty("output.rotate.max_mb", 0) * 1024L * 1024L;
+        this.rotateIntervalMillis = ConfigManager.getIntProperty("output.rotate.interval_minutes", 0) * 60_000L;
+        if (isRotating() && layout == Layout.SHARDED_MERGED) {
+            logger.error("ErrOpenFile03. Output rotation cannot be combined with the sharded_merged layout");
+            throw new IllegalArgumentException("ErrOpenFile03." + layout);
+        }
+        if (!isRotating()) {
+            deleteFileIfExists(getOutputPath());
+        }
         createOutputDirectory();
+        if (isSingleFile()) {
+            shards.put(SINGLE_SHARD, openShard(OUT_FILE, null));
+        }
+    }
+
+    private static boolean isGzipEnabled() {
+        String compress = ConfigManager.getProperty("output.compress");
+        if (compress == null || compress.isBlank() || COMPRESS_NONE.equalsIgnoreCase(compress)) {
+            return false;
+        } else if (COMPRESS_GZIP.equalsIgnoreCase(compress)) {
+            return true;
+        }
+        logger.error("ErrOpenFile04. Unknown output compression: {}", compress);
+        throw new IllegalArgumentException("ErrOpenFile04." + compress);
+    }
+
+    private boolean isSingleFile() {
+        return layout == Layout.SINGLE && !FORMAT_CSV.equals(format);
+    }
+
+    private boolean isRotating() {
+        return rotateMaxBytes > 0 || rotateIntervalMillis > 0;
+    }
+
+    private OutputShard getShard(String serviceName) {
+        if (isSingleFile()) {
+            return shards.get(SINGLE_SHARD);
+        }
+        return shards.computeIfAbsent(serviceName, name -> {
+            String baseName = OUT_FILE + "-" + name;
+            if (!isSegmented()) {
+                deleteFileIfExists(Path.of(outDir, baseName + "." + getExtension()));
+            }
+            return openShard(baseName, name);
+        });
+    }
+
+    /**
+     * CSV is always split into numbered segments: a change of the columns starts a new file with the new header.
+     */
+    private boolean isSegmented() {
+        return isRotating() || FORMAT_CSV.equals(format);
+    }
+
+    /**
+     * Opens the output named baseName: a single file, or numbered segments when rotation is enabled or for CSV.
+     * serviceName is the service the output belongs to, null for the file shared by all services.
+     */
+    private OutputShard openShard(String baseName, String serviceName) {
+        Path filePath = Path.of(outDir, baseName + "." + getExtension());
+        try {
+            RollingSink segments = null;
+            OutputSink fileSink;
+            if (isSegmented()) {
+                // every CSV segment starts with the header its rows follow
+                segments = new RollingSink(Path.of(outDir), baseName, getExtension(),
+                        rotateMaxBytes, rotateIntervalMillis, this::openFileSink,
+                        FORMAT_CSV.equals(format) ? record -> csvSchemas.isHeader(serviceName, record) : null);
+                fileSink = segments;
+            } else {
+                fileSink = openFileSink(filePath);
+            }
+            return new OutputShard(filePath, segments, new AsyncWriter(baseName, fileSink,
+                    ConfigManager.getIntProperty("output.writer.queue_capacity", DEFAULT_QUEUE_CAPACITY),
+                    ConfigManager.getIntProperty("output.writer.max_batch", DEFAULT_MAX_BATCH),
+                    AsyncWriter.FsyncPolicy.fromString(ConfigManager.getProperty("output.writer.fsync")),
+                    ConfigManager.getIntProperty("output.writer.fsync_interval_ms", DEFAULT_FSYNC_INTERVAL_MS)));
+        } catch (IOException e) {
+            logger.error("ErrOpenFile01. Error opening file {}: {}", filePath, e.getMessage());
+            throw new RuntimeException("ErrOpenFile01." + filePath, e);
+        }
+    }
+
+    private OutputSink openFileSink(Path filePath) throws IOException {
+        String sinkType = ConfigManager.getProperty("output.sink");
+        if (gzip) {
+            if (SINK_MMAP.equalsIgnoreCase(sinkType)) {
+                logger.warn("Compressed output is written as a stream, output.sink={} is ignored", sinkType);
+            }
+            return new GzipSink(filePath);
+        }
+        if (SINK_MMAP.equalsIgnoreCase(sinkType)) {
+            long chunkSize = ConfigManager.getIntProperty("output.mmap.chunk_mb", DEFAULT_MMAP_CHUNK_MB,
+                    1, MAX_MMAP_CHUNK_MB) * 1024L * 1024L;
+            return new MappedSink(filePath, chunkSize);
+        } else if (sinkType == null || sinkType.isBlank() || SINK_CHANNEL.equalsIgnoreCase(sinkType)) {
+            return new ChannelSink(filePath);
+        }
+        logger.error("ErrOpenFile02. Unknown output sink: {}", sinkType);
+        throw new IllegalArgumentException("ErrOpenFile02." + sinkType);
+    }
+
+    private String getExtension() {
+        return gzip ? format + ".gz" : format;
     }
 
     private void deleteFileIfExists(Path filePath) {
@@ -62,201 +236,264 @@ public class DataProcessor {
         }
     }
 
-    public synchronized void process(String serviceName, String data) throws Exception {
-        if (data == null || data.isEmpty()) {
+    public boolean process(String serviceName, String data) throws Exception {
+        return process(ApiPayload.of(serviceName, data));
+    }
+
+    /**
+     * Writes the payload in the output format. Returns false if there was nothing new to write:
+     * the payload is not modified, empty or a duplicate.
+     */
+    public boolean process(ApiPayload payload) throws Exception {
+        String serviceName = payload.getServiceName();
+        if (payload.isNotModified()) {
+            logger.debug("Data of service {} not modified, nothing to write", serviceName);
+            return false;
+        }
+        if (payload.isEmpty()) {
             logger.warn("No data to process for service {}", serviceName);
-            return;
+            return false;
+        }
+        long contentHash = 0;
+        if (deduplicator != null) {
+            contentHash = deduplicator.contentHash(payload);
+            if (deduplicator.isDuplicate(payload, contentHash)) {
+                logger.debug("Duplicate data of service {} dropped ({} of {} so far)", serviceName,
+                        deduplicator.getDroppedCount(), deduplicator.getCheckedCount());
+                return false;
+            }
         }
 
+        ServiceMetrics metrics = Metrics.service(serviceName);
+        long start = System.nanoTime();
         try {
-            logger.trace("Writing data for service {}: {}", serviceName, data);
+            logger.trace("Writing {} bytes for service {}", payload.getBody().length, serviceName);
+            OutputShard shard = getShard(serviceName);
             switch (format) {
-                case FORMAT_JSON -> writeJson(serviceName, data);
-                case FORMAT_CSV -> writeCsv(serviceName, data);
+                case FORMAT_JSON -> writeJson(shard, serviceName, payload);
+                case FORMAT_CSV -> writeCsv(shard, serviceName, payload);
+                case FORMAT_NDJSON -> writeNdjson(shard, serviceName, payload);
+                case FORMAT_COLUMNAR -> writeColumnar(shard, serviceName, payload);
             }
+            if (deduplicator != null) {
+                // only written content counts, a failed write is not dropped as a duplicate when retried
+                deduplicator.remember(payload, contentHash);
+            }
+            metrics.onProcessed(System.nanoTime() - start);
+            return true;
         } catch (Exception e) {
+            metrics.onProcessError();
             logger.error("ErrProcess001. Error processing data for service {}: {}", serviceName, e.getMessage());
             throw new Exception("ErrProcess001.");
         }
     }
 
-    private void writeIntoFile(String data) throws IOException {
-        try {
-            Files.writeString(
-                    Path.of(outDir + File.separator + OUT_FILE + "." + format),
-                    data,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            logger.error("ErrJson001. Error writing data to file: {}", e.getMessage());
-            throw new IOException("ErrJson001", e);
-        }
+    /**
+     * Number of records dropped as duplicates, 0 when deduplication is off.
+     */
+    public long getDuplicatesDropped() {
+        return deduplicator == null ? 0 : deduplicator.getDroppedCount();
     }
 
-    private void writeJson(String serviceName, String data) throws IOException  {
-        String prettyJson;
-        try {
-            JsonNode jsonNode = objectMapper.readTree(data);
-            prettyJson = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonNode);
-        } catch (JsonProcessingException e) {
-            logger.error("ErrJson002. Error writing JSON data for service {}: {}", serviceName, e.getMessage());
-            throw new IOException("ErrJson002", e);
+    /**
+     * Blocks until everything processed so far is written to the output file.
+     */
+    public void flush() throws IOException {
+        writeColumnBlocks();
+        for (OutputShard shard : shards.values()) {
+            shard.getSink().flush();
         }
-
-        writeIntoFile(prettyJson + System.lineSeparator());
     }
 
-    private void writeCsv(String serviceName, String data) throws IOException {
+    @Override
+    public void close() throws IOException {
+        if (deduplicator != null) {
+            logger.info("Dropped {} duplicate records of {}", deduplicator.getDroppedCount(),
+                    deduplicator.getCheckedCount());
+        }
+        IOException failure = null;
         try {
-            // Parse the JSON data
-            JsonNode rootNode = objectMapper.readTree(data);
-            StringBuilder csvData = new StringBuilder();
-
-            // Special handling for NYTimes data
-            if (serviceName.equals("NYTimes")) {
-                processNYTimesData(rootNode, csvData);
-            } else if (rootNode.isObject()) {
-                processSingleObject(rootNode, csvData);
-            } else if (rootNode.isArray() && !rootNode.isEmpty()) {
-                processJsonArray(rootNode, csvData);
-            } else {
-                logger.warn("ErrCsv001. Empty or unsupported JSON structure for service {}", serviceName);
-            }
-
-            writeIntoFile(csvData.toString());
-        } catch (JsonProcessingException e) {
-            logger.error("ErrCsv002. Invalid JSON format for service {}: {}", serviceName, e.getMessage());
-            throw new IOException("ErrCsv002", e);
+            writeColumnBlocks();
         } catch (IOException e) {
-            logger.error("ErrCsv003. Error writing CSV data for service {}: {}", serviceName, e.getMessage());
-            throw new IOException("ErrCsv003", e);
-        } catch (Exception e) {
-            logger.error("ErrCsv004. Unexpected error converting JSON to CSV for service {}: {}",
-                    serviceName, e.getMessage());
-            throw new IOException("ErrCsv004", e);
+            failure = e;
         }
-    }
-
-    private void processNYTimesData(JsonNode rootNode, StringBuilder csvData) {
-        // NYTimes most popular articles API typically has a "results" array
-        JsonNode resultsNode = rootNode.get("results");
-
-        if (resultsNode != null && resultsNode.isArray() && !resultsNode.isEmpty()) {
-            // Define custom fields we want to extract
-            String[] fieldNames = {"title", "abstract", "url", "published_date", "byline", "section"};
-
-            // Create header row with our selected fields
-            StringBuilder header = new StringBuilder();
-            for (String field : fieldNames) {
-                if (!header.isEmpty()) {
-                    header.append(",");
-                }
-                header.append(escapeField(field));
+        for (OutputShard shard : shards.values()) {
+            try {
+                shard.getSink().close();
+            } catch (IOException e) {
+                failure = e;
             }
-            csvData.append(header).append(System.lineSeparator());
-
-            // Process each article
-            for (JsonNode article : resultsNode) {
-                StringBuilder row = new StringBuilder();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (layout == Layout.SHARDED_MERGED) {
+            mergeShards();
+        }
+    }
 
-                for (String field : fieldNames) {
-                    if (!row.isEmpty()) {
-                        row.append(",");
+    /**
+     * Concatenates the closed shards, ordered by service name, into the single output file.
+     */
+    private void mergeShards() throws IOException {
+        List<String> serviceNames = new ArrayList<>(shards.keySet());
+        serviceNames.sort(null);
+        try (FileChannel merged = FileChannel.open(getOutputPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String serviceName : serviceNames) {
+                for (Path file : shards.get(serviceName).getFiles()) {
+                    try (FileChannel shard = FileChannel.open(file, StandardOpenOption.READ)) {
+                        long position = 0;
+                        long size = shard.size();
+                        while (position < size) {
+                            position += shard.transferTo(position, size - position, merged);
+                        }
                     }
-
-                    JsonNode value = article.get(field);
-                    row.append(formatNodeValue(value));
                 }
-
-                csvData.append(row).append(System.lineSeparator());
-            }
-        } else {
-            logger.warn("ErrCsv005. NYTimes data doesn't contain expected 'results' array");
-            // Fall back to default processing
-            if (rootNode.isObject()) {
-                processSingleObject(rootNode, csvData);
-            } else if (rootNode.isArray() && !rootNode.isEmpty()) {
-                processJsonArray(rootNode, csvData);
             }
+        } catch (IOException e) {
+            logger.error("ErrMerge001. Error merging output shards: {}", e.getMessage());
+            throw new IOException("ErrMerge001", e);
         }
+        logger.info("Merged {} output shards into {}", serviceNames.size(), getOutputPath());
     }
 
-    private void processSingleObject(JsonNode objectNode, StringBuilder csvData) {
-        // Create header row and value row for single object
-        StringBuilder headers = new StringBuilder();
-        StringBuilder values = new StringBuilder();
-
-        objectNode.fieldNames().forEachRemaining(field -> {
-            if (!headers.isEmpty()) {
-                headers.append(",");
-                values.append(",");
-            }
-            headers.append(escapeField(field));
-            JsonNode value = objectNode.get(field);
-
-            values.append(formatNodeValue(value));
-        });
-
-        csvData.append(headers).append(System.lineSeparator());
-        csvData.append(values).append(System.lineSeparator());
+    private Path getOutputPath() {
+        return Path.of(outFileName + "." + getExtension());
     }
 
-    private void processJsonArray(JsonNode arrayNode, StringBuilder csvData) {
-        JsonNode firstItem = arrayNode.get(0);
-
-        // Create header row from first item's fields
-        StringBuilder headers = new StringBuilder();
-        firstItem.fieldNames().forEachRemaining(field -> {
-            if (!headers.isEmpty()) {
-                headers.append(",");
-            }
-            headers.append(escapeField(field));
-        });
-        csvData.append(headers).append(System.lineSeparator());
-
-        // Process each array item as a row
-        for (JsonNode item : arrayNode) {
-            processArrayItem(item, firstItem, csvData);
+    private void writeIntoFile(OutputShard shard, byte[] data) throws IOException {
+        try {
+            shard.getSink().write(data);
+        } catch (IOException e) {
+            logger.error("ErrJson001. Error writing data to file: {}", e.getMessage());
+            throw new IOException("ErrJson001", e);
         }
     }
 
-    private void processArrayItem(JsonNode item, JsonNode templateNode, StringBuilder csvData) {
-        StringBuilder row = new StringBuilder();
+    private void writeJson(OutputShard shard, String serviceName, ApiPayload payload) throws IOException  {
+        byte[] prettyJson;
+        try {
+            JsonNode jsonNode = payload.getTree();
+            prettyJson = objectMapper.writerWithDefaultPrettyPrinter()
+                    .writeValueAsString(jsonNode).concat(System.lineSeparator())
+                    .getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            logger.error("ErrJson002. Error writing JSON data for service {}: {}", serviceName, e.getMessage());
+            throw new IOException("ErrJson002", e);
+        }
 
-        templateNode.fieldNames().forEachRemaining(field -> {
-            if (!row.isEmpty()) {
-                row.append(",");
-            }
+        // a single record, the sink keeps it in one piece without the write lock
+        writeIntoFile(shard, prettyJson);
+    }
 
-            JsonNode value = item.get(field);
-            row.append(formatNodeValue(value));
-        });
+    /**
+     * One compact line per response: {"service":...,"fetched_at":...,"latency_ms":...,"data":<response>}.
+     * The response is copied as it was fetched, line breaks in it are only whitespace between tokens
+     * (JSON strings cannot contain them unescaped), so they are replaced with spaces instead of reformatting.
+     * That only holds for valid JSON, so the response is checked token by token first: a truncated response
+     * or an HTML error page is rejected instead of breaking the lines of the file.
+     */
+    private void writeNdjson(OutputShard shard, String serviceName, ApiPayload payload) throws IOException {
+        validateJson(serviceName, payload.getBody());
+        byte[] prefix = ("{\"service\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(serviceName))
+                + "\",\"fetched_at\":\"" + payload.getFetchedAt()
+                + "\",\"latency_ms\":" + payload.getLatencyMillis()
+                + ",\"data\":").getBytes(StandardCharsets.UTF_8);
+        byte[] body = payload.getBody();
+        byte[] record = new byte[prefix.length + body.length + NDJSON_SUFFIX.length];
+        System.arraycopy(prefix, 0, record, 0, prefix.length);
+        for (int i = 0; i < body.length; i++) {
+            byte b = body[i];
+            record[prefix.length + i] = b == '\n' || b == '\r' ? (byte) ' ' : b;
+        }
+        System.arraycopy(NDJSON_SUFFIX, 0, record, prefix.length + body.length, NDJSON_SUFFIX.length);
 
-        csvData.append(row).append(System.lineSeparator());
+        writeIntoFile(shard, record);
     }
 
-    private String formatNodeValue(JsonNode value) {
-        if (value == null) {
-            return "";
+    /**
+     * Checks that the body is exactly one JSON value, without building a tree.
+     */
+    private static void validateJson(String serviceName, byte[] body) throws IOException {
+        long start = System.nanoTime();
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() == null) {
+                throw new JsonParseException(parser, "No JSON value");
+            }
+            parser.skipChildren();
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Unexpected content after the JSON value");
+            }
+        } catch (JsonProcessingException e) {
+            logger.error("ErrNdjson001. Invalid JSON for service {}: {}", serviceName, e.getOriginalMessage());
+            throw new IOException("ErrNdjson001", e);
+        } finally {
+            Metrics.service(serviceName).onParsed(System.nanoTime() - start);
         }
+    }
 
-        // Handle nested objects/arrays by converting them to string
-        if (value.isObject() || value.isArray()) {
-            return escapeField(value.toString());
-        } else {
-            return escapeField(value.asText());
+    private void writeColumnar(OutputShard shard, String serviceName, ApiPayload payload) throws IOException {
+        // rows are buffered per service and written as a block once enough have accumulated
+        shard.getLock().lock();
+        try {
+            ColumnBlockWriter blockWriter = columnBlocks.computeIfAbsent(serviceName,
+                    name -> new ColumnBlockWriter(name, shard.getSink(), columnarBlockRows));
+            rowReader.read(payload, blockWriter);
+        } catch (JsonProcessingException e) {
+            logger.error("ErrColumnar003. Invalid JSON format for service {}: {}", serviceName, e.getMessage());
+            throw new IOException("ErrColumnar003", e);
+        } catch (IOException e) {
+            logger.error("ErrColumnar004. Error writing column block for service {}: {}", serviceName, e.getMessage());
+            throw new IOException("ErrColumnar004", e);
+        } finally {
+            shard.getLock().unlock();
         }
     }
 
-    private String escapeField(String value) {
-        if (value == null) {
-            return "";
+    /**
+     * Writes the rows buffered by the columnar format as (possibly short) blocks.
+     */
+    private void writeColumnBlocks() throws IOException {
+        for (Map.Entry<String, ColumnBlockWriter> entry : columnBlocks.entrySet()) {
+            OutputShard shard = getShard(entry.getKey());
+            shard.getLock().lock();
+            try {
+                entry.getValue().writeBlock();
+            } catch (IOException e) {
+                logger.error("ErrColumnar004. Error writing column block for service {}: {}",
+                        entry.getKey(), e.getMessage());
+                throw new IOException("ErrColumnar004", e);
+            } finally {
+                shard.getLock().unlock();
+            }
         }
+    }
 
-        // If the value contains comma, quote, or newline, wrap it in quotes and escape any quotes
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
+    private void writeCsv(OutputShard shard, String serviceName, ApiPayload payload) throws IOException {
+        // rows are converted straight from the payload tokens, mapped onto the columns of the service
+        // and handed to the writer in chunks
+        shard.getLock().lock();
+        try {
+            CsvRowWriter csvWriter = csvWriters.computeIfAbsent(shard,
+                    key -> new CsvRowWriter(key.getSink(), CSV_CHUNK_SIZE));
+            try {
+                rowReader.read(payload, csvSchemas.handler(serviceName, csvWriter));
+            } finally {
+                csvWriter.flush();
+            }
+        } catch (JsonProcessingException e) {
+            logger.error("ErrCsv002. Invalid JSON format for service {}: {}", serviceName, e.getMessage());
+            throw new IOException("ErrCsv002", e);
+        } catch (IOException e) {
+            logger.error("ErrCsv003. Error writing CSV data for service {}: {}", serviceName, e.getMessage());
+            throw new IOException("ErrCsv003", e);
+        } catch (Exception e) {
+            logger.error("ErrCsv004. Unexpected error converting JSON to CSV for service {}: {}",
+                    serviceName, e.getMessage());
+            throw new IOException("ErrCsv004", e);
+        } finally {
+            shard.getLock().unlock();
         }
-        return value;
     }
 }
@@ -0,0 +1,45 @@
+package me.gruzdeva.utils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses records on the fly into a gzip file. The file is a complete gzip stream only after close;
+ * {@link #force()} sync-flushes the compressor first, so everything written before it can be decompressed
+ * from the file even if the process dies before close.
+ */
+class GzipSink implements OutputSink {
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    private final FileOutputStream file;
+    private final GZIPOutputStream gzip;
+
+    GzipSink(Path path) throws IOException {
+        this.file = new FileOutputStream(path.toFile());
+        // syncFlush: flush() emits the pending compressed data instead of only flushing the file stream
+        this.gzip = new GZIPOutputStream(file, BUFFER_SIZE, true);
+    }
+
+    @Override
+    public void write(byte[] record) throws IOException {
+        gzip.write(record);
+    }
+
+    @Override
+    public void flush() {
+        // compressed data is emitted in blocks, flushing every record would hurt the compression ratio
+    }
+
+    @Override
+    public void force() throws IOException {
+        gzip.flush();
+        file.getChannel().force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        gzip.close();
+    }
+}
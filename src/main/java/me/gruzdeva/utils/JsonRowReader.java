@@ -0,0 +1,294 @@
+package me.gruzdeva.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.gruzdeva.api.ApiClient;
+import me.gruzdeva.api.ApiPayload;
+import me.gruzdeva.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a JSON response into flat rows by reading parser tokens, without building a tree of the whole payload.
+ * The tokens are read from the body buffered in the payload, not from the connection, so the body itself
+ * is in memory; besides it only the current row is held, nested objects and arrays are kept as JSON text
+ * in a single column.
+ * Values are copied from the parser's buffer into one builder per column that is reused for every row,
+ * so reading a row allocates nothing once the builders have grown to the longest value.
+ */
+class JsonRowReader {
+    private final static Logger logger = LoggerFactory.getLogger(JsonRowReader.class);
+
+    // Custom fields extracted from the NYTimes most popular articles
+    final static List<String> NYTIMES_FIELDS = List.of("title", "abstract", "url", "published_date", "byline", "section");
+    // Change events of the NYTimes article diff, see NYTimesService
+    final static List<String> NYTIMES_CHANGE_FIELDS = List.of("change", "rank", "previous_rank",
+            "title", "abstract", "url", "published_date", "byline", "section");
+
+    private final ObjectMapper objectMapper;
+
+    JsonRowReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reads the rows of the payload into the handler, the time it takes is recorded as the parse latency.
+     */
+    void read(ApiPayload payload, RowHandler handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            readRows(payload, handler);
+        } finally {
+            Metrics.service(payload.getServiceName()).onParsed(System.nanoTime() - start);
+        }
+    }
+
+    private void readRows(ApiPayload payload, RowHandler handler) throws IOException {
+        String serviceName = payload.getServiceName();
+
+        // Special handling for NYTimes data
+        if (ApiClient.SERVICE_NYTIMES.equals(serviceName)) {
+            if (readNYTimes(payload, handler)) {
+                return;
+            }
+            logger.warn("ErrCsv005. NYTimes data doesn't contain expected 'results' or 'changes' array");
+            // Fall back to default processing
+        }
+
+        try (JsonParser parser = objectMapper.createParser(payload.openStream());
+             ValueReader values = new ValueReader()) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                readSingleObject(parser, handler, values);
+            } else if (token != JsonToken.START_ARRAY || !readObjectArray(parser, handler, values)) {
+                logger.warn("ErrCsv001. Empty or unsupported JSON structure for service {}", serviceName);
+            }
+        }
+    }
+
+    /**
+     * NYTimes most popular articles API typically has a "results" array, only the selected fields are written.
+     * When only the changes since the previous poll are passed on, they are in a "changes" array instead.
+     * Returns false if there is no non-empty "results" or "changes" array, nothing is emitted in that case.
+     */
+    private boolean readNYTimes(ApiPayload payload, RowHandler handler) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(payload.openStream());
+             ValueReader values = new ValueReader()) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("results".equals(name) && token == JsonToken.START_ARRAY) {
+                    return readProjectedArray(parser, NYTIMES_FIELDS, handler, values);
+                }
+                if ("changes".equals(name) && token == JsonToken.START_ARRAY) {
+                    return readProjectedArray(parser, NYTIMES_CHANGE_FIELDS, handler, values);
+                }
+                parser.skipChildren();
+            }
+            return false;
+        }
+    }
+
+    private boolean readProjectedArray(JsonParser parser, List<String> fields, RowHandler handler,
+                                       ValueReader valueReader) throws IOException {
+        StringBuilder[] values = newBuilders(fields.size());
+        List<StringBuilder> row = Arrays.asList(values);
+        boolean headerWritten = false;
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (!headerWritten) {
+                handler.header(fields);
+                headerWritten = true;
+            }
+            clear(values);
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    int index = fields.indexOf(parser.currentName());
+                    parser.nextToken();
+                    if (index >= 0) {
+                        valueReader.read(parser, values[index]);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+            handler.row(row);
+        }
+        return headerWritten;
+    }
+
+    private void readSingleObject(JsonParser parser, RowHandler handler, ValueReader valueReader) throws IOException {
+        // Create header row and value row for single object
+        List<String> columns = new ArrayList<>();
+        List<StringBuilder> values = new ArrayList<>();
+        readFields(parser, columns, values, valueReader);
+
+        handler.header(columns);
+        handler.row(values);
+    }
+
+    /**
+     * The first item defines the columns, later items are mapped onto them.
+     * Returns false for an empty array.
+     */
+    private boolean readObjectArray(JsonParser parser, RowHandler handler, ValueReader valueReader) throws IOException {
+        if (parser.nextToken() == JsonToken.END_ARRAY) {
+            return false;
+        }
+
+        List<String> columns = new ArrayList<>();
+        List<StringBuilder> firstValues = new ArrayList<>();
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            readFields(parser, columns, firstValues, valueReader);
+        } else {
+            parser.skipChildren();
+        }
+        handler.header(columns);
+        handler.row(firstValues);
+
+        Map<String, Integer> columnIndex = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndex.putIfAbsent(columns.get(i), i);
+        }
+
+        StringBuilder[] values = newBuilders(columns.size());
+        List<StringBuilder> row = Arrays.asList(values);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            clear(values);
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    Integer index = columnIndex.get(parser.currentName());
+                    parser.nextToken();
+                    if (index != null) {
+                        valueReader.read(parser, values[index]);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+            handler.row(row);
+        }
+        return true;
+    }
+
+    private void readFields(JsonParser parser, List<String> columns, List<StringBuilder> values,
+                            ValueReader valueReader) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            columns.add(parser.currentName());
+            parser.nextToken();
+            StringBuilder value = new StringBuilder();
+            valueReader.read(parser, value);
+            values.add(value);
+        }
+    }
+
+    private static StringBuilder[] newBuilders(int count) {
+        StringBuilder[] builders = new StringBuilder[count];
+        for (int i = 0; i < count; i++) {
+            builders[i] = new StringBuilder();
+        }
+        return builders;
+    }
+
+    private static void clear(StringBuilder[] values) {
+        for (StringBuilder value : values) {
+            value.setLength(0);
+        }
+    }
+
+    /**
+     * Copies the current value of the parser into a builder: scalars straight from the parser's character buffer,
+     * nested objects and arrays as compact JSON through a generator that is kept for the whole payload.
+     */
+    private class ValueReader implements Closeable {
+        private final BuilderWriter out = new BuilderWriter();
+        private JsonGenerator generator;
+
+        void read(JsonParser parser, StringBuilder value) throws IOException {
+            value.setLength(0);
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                if (generator == null) {
+                    generator = objectMapper.getFactory().createGenerator(out);
+                    // every nested value is written as a root value, without a separator before the next one
+                    generator.setRootValueSeparator(null);
+                }
+                out.target = value;
+                copyStructure(parser);
+                generator.flush();
+            } else if (token == JsonToken.VALUE_NULL) {
+                value.append("null");
+            } else {
+                value.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            }
+        }
+
+        /**
+         * Like {@link JsonGenerator#copyCurrentStructure}, but numbers keep the text of their token:
+         * the generator would write them from their int or double value, so -0 became 0 and 1.50 became 1.5.
+         */
+        private void copyStructure(JsonParser parser) throws IOException {
+            int depth = 0;
+            JsonToken token = parser.currentToken();
+            do {
+                if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    generator.writeNumber(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                } else {
+                    generator.copyCurrentEvent(parser);
+                    if (token.isStructStart()) {
+                        depth++;
+                    } else if (token.isStructEnd()) {
+                        depth--;
+                    }
+                }
+            } while (depth > 0 && (token = parser.nextToken()) != null);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (generator != null) {
+                generator.close();
+            }
+        }
+    }
+
+    private static class BuilderWriter extends Writer {
+        private StringBuilder target;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            target.append(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            target.append(text, offset, offset + length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
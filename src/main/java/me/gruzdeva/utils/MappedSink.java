@@ -0,0 +1,79 @@
+package me.gruzdeva.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends records by copying them into a memory-mapped region of the file, so a write is a memory copy
+ * instead of a system call. The region is remapped in large chunks when it runs out, which grows the file
+ * ahead of the data; the file is truncated to its real length on close. Until then, readers of the file
+ * see zero bytes after the last record.
+ * A mapping is forced before it is replaced, so {@link #force()} only has to force the current one.
+ */
+class MappedSink implements OutputSink {
+    private final FileChannel channel;
+    private final long chunkSize;
+    private MappedByteBuffer buffer;
+    // file offset of the first byte of the current mapping
+    private long mappedStart;
+    // length of the file known to be on the storage device
+    private long forcedLength;
+
+    MappedSink(Path path, long chunkSize) throws IOException {
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.chunkSize = chunkSize;
+        this.mappedStart = channel.size();
+        this.forcedLength = mappedStart;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, mappedStart, chunkSize);
+    }
+
+    @Override
+    public void write(byte[] record) throws IOException {
+        if (buffer.remaining() < record.length) {
+            remap(record.length);
+        }
+        buffer.put(record);
+    }
+
+    private void remap(int minSize) throws IOException {
+        // the records of the old mapping would otherwise never be forced
+        buffer.force();
+        mappedStart += buffer.position();
+        forcedLength = mappedStart;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, mappedStart, Math.max(chunkSize, minSize));
+    }
+
+    long length() {
+        return mappedStart + buffer.position();
+    }
+
+    long forcedLength() {
+        return forcedLength;
+    }
+
+    @Override
+    public void flush() {
+        // stores into the mapping are visible to other readers of the file right away
+    }
+
+    @Override
+    public void force() {
+        buffer.force();
+        forcedLength = length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            buffer.force();
+            channel.truncate(length());
+        } finally {
+            buffer = null;
+            channel.close();
+        }
+    }
+}
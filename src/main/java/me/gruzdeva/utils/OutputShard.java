@@ -0,0 +1,32 @@
+package me.gruzdeva.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One output file with its own writer and lock, independent of the other shards.
+ * The output may be split into numbered segments, then the segments are the files of the shard.
+ */
+@AllArgsConstructor
+class OutputShard {
+    private final Path path;
+    // null unless the output is split into segments
+    private final RollingSink segments;
+    @Getter
+    private final OutputSink sink;
+    // keeps the chunks of one CSV response together in the file
+    // not synchronized: a virtual thread blocked on a full queue inside a monitor would pin its carrier thread
+    @Getter
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The files written so far, in order.
+     */
+    List<Path> getFiles() {
+        return segments == null ? List.of(path) : segments.getSegments();
+    }
+}
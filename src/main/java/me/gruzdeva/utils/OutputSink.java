@@ -0,0 +1,29 @@
+package me.gruzdeva.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the encoded records. Records are appended in the order they are written.
+ */
+interface OutputSink extends Closeable {
+
+    void write(byte[] record) throws IOException;
+
+    default void write(List<byte[]> records) throws IOException {
+        for (byte[] record : records) {
+            write(record);
+        }
+    }
+
+    /**
+     * Makes everything written so far visible in the file.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Forces written data to the storage device (fsync).
+     */
+    void force() throws IOException;
+}
@@ -0,0 +1,180 @@
+package me.gruzdeva.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import me.gruzdeva.api.ApiPayload;
+import me.gruzdeva.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Recognizes records that were already written for a service. Every record is reduced to a hash of its
+ * canonical content (the parsed JSON with sorted keys, so key order and whitespace do not matter).
+ * <p>
+ * Per service, a Bloom filter answers "definitely new" for most new records, and an LRU of the last
+ * {@code capacity} exact hashes confirms a duplicate. A record is only dropped when its hash is in the LRU,
+ * so a Bloom filter false positive never loses a record, while a duplicate older than the LRU window is written
+ * again. The filter is rebuilt from the LRU before it fills up, which keeps memory fixed however long the run.
+ * <p>
+ * A record is only remembered once it was written, so a record whose write failed is not dropped when it comes again.
+ * Checks and drops are also counted in the metrics of the service.
+ */
+class RecordDeduplicator {
+    private final static Logger logger = LoggerFactory.getLogger(RecordDeduplicator.class);
+
+    private final static int BITS_PER_ENTRY = 16;
+    private final static int HASH_FUNCTIONS = 7;
+
+    private final ObjectWriter canonicalWriter;
+    private final int capacity;
+    private final Map<String, ServiceFilter> filters = new ConcurrentHashMap<>();
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    RecordDeduplicator(ObjectMapper objectMapper, int capacity) {
+        this.canonicalWriter = objectMapper.writer().with(JsonNodeFeature.WRITE_PROPERTIES_SORTED);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns true if the same content was written recently for the service.
+     */
+    boolean isDuplicate(ApiPayload payload, long hash) {
+        boolean duplicate = getFilter(payload.getServiceName()).contains(hash);
+        checked.incrementAndGet();
+        if (duplicate) {
+            dropped.incrementAndGet();
+        }
+        Metrics.service(payload.getServiceName()).onDuplicateCheck(duplicate);
+        return duplicate;
+    }
+
+    /**
+     * Remembers the content of a payload that was written.
+     */
+    void remember(ApiPayload payload, long hash) {
+        getFilter(payload.getServiceName()).add(hash);
+    }
+
+    private ServiceFilter getFilter(String serviceName) {
+        return filters.computeIfAbsent(String.valueOf(serviceName), name -> new ServiceFilter(capacity));
+    }
+
+    long getCheckedCount() {
+        return checked.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long contentHash(ApiPayload payload) {
+        byte[] content;
+        try {
+            JsonNode tree = payload.getTree();
+            content = canonicalWriter.writeValueAsBytes(tree);
+        } catch (IOException e) {
+            // not JSON, the raw bytes are the content
+            logger.debug("Hashing raw content of service {}: {}", payload.getServiceName(), e.getMessage());
+            content = payload.getBody();
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class ServiceFilter {
+        private final int capacity;
+        private final long[] bits;
+        private final LinkedHashMap<Long, Boolean> recent;
+        // insertions into the Bloom filter since it was last rebuilt
+        private int insertions;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        ServiceFilter(int capacity) {
+            this.capacity = capacity;
+            this.bits = new long[Math.max(1, capacity * BITS_PER_ENTRY / 64)];
+            this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                    return size() > ServiceFilter.this.capacity;
+                }
+            };
+        }
+
+        boolean contains(long hash) {
+            lock.lock();
+            try {
+                // the lookup also refreshes the position of the hash in the LRU
+                return mightContain(hash) && recent.get(hash) != null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void add(long hash) {
+            lock.lock();
+            try {
+                if (recent.put(hash, Boolean.TRUE) != null) {
+                    return;
+                }
+                if (insertions >= 2 * capacity) {
+                    rebuild();
+                }
+                setBits(hash);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void rebuild() {
+            Arrays.fill(bits, 0);
+            insertions = 0;
+            for (long hash : recent.keySet()) {
+                setBits(hash);
+            }
+        }
+
+        private void setBits(long hash) {
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                long bit = bitIndex(hash, i);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            insertions++;
+        }
+
+        private boolean mightContain(long hash) {
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                long bit = bitIndex(hash, i);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // double hashing over the two halves of the content hash
+        private long bitIndex(long hash, int i) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            return Integer.toUnsignedLong(h1 + i * h2) % (bits.length * 64L);
+        }
+    }
+}
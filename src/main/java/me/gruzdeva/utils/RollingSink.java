@@ -0,0 +1,212 @@
+package me.gruzdeva.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the output into numbered segments (for example "output.00001.json.gz"). A new segment is started
+ * when the current one would exceed the size limit or is older than the time limit; both are checked on write,
+ * and the size counts the bytes before compression. Completed segments are closed and made read-only.
+ * Numbering continues after the segments already in the directory, so earlier runs are never overwritten.
+ * Formats with a header (CSV) pass a predicate that recognizes header records: the last header written
+ * is repeated at the start of every new segment, and a different header (the columns changed) starts
+ * a new segment, so each file is one table that can be read on its own. Without limits, segments
+ * only change with the header.
+ */
+class RollingSink implements OutputSink {
+    private final static Logger logger = LoggerFactory.getLogger(RollingSink.class);
+
+    interface SegmentFactory {
+        OutputSink open(Path path) throws IOException;
+    }
+
+    private final Path directory;
+    private final String baseName;
+    private final String extension;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final SegmentFactory segmentFactory;
+    // null when the format has no header
+    private final Predicate<byte[]> headerRecords;
+
+    private int index;
+    private OutputSink current;
+    private Path currentPath;
+    private long currentBytes;
+    private long openedAt;
+    private byte[] lastHeader;
+    // header of the current segment, null if it has none yet
+    private byte[] currentHeader;
+    // segments started by this sink, in order; written by the writer thread
+    private final List<Path> segments = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param maxBytes size limit of a segment, 0 for no limit
+     * @param maxAgeMillis time limit of a segment, 0 for no limit
+     */
+    RollingSink(Path directory, String baseName, String extension, long maxBytes, long maxAgeMillis,
+                SegmentFactory segmentFactory) throws IOException {
+        this(directory, baseName, extension, maxBytes, maxAgeMillis, segmentFactory, null);
+    }
+
+    /**
+     * @param headerRecords recognizes the header records to repeat in every segment, null for none
+     */
+    RollingSink(Path directory, String baseName, String extension, long maxBytes, long maxAgeMillis,
+                SegmentFactory segmentFactory, Predicate<byte[]> headerRecords) throws IOException {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.extension = extension;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.segmentFactory = segmentFactory;
+        this.headerRecords = headerRecords;
+        this.index = findLastIndex();
+    }
+
+    private int findLastIndex() throws IOException {
+        Pattern segmentPattern = Pattern.compile(Pattern.quote(baseName) + "\\.(\\d+)\\." + Pattern.quote(extension));
+        int last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = segmentPattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    last = Math.max(last, Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return last;
+    }
+
+    @Override
+    public void write(byte[] record) throws IOException {
+        prepare(record);
+        current.write(record);
+        currentBytes += record.length;
+        trackHeader(record);
+    }
+
+    @Override
+    public void write(List<byte[]> records) throws IOException {
+        int from = 0;
+        while (from < records.size()) {
+            prepare(records.get(from));
+            // pass as many records as fit into the current segment in one call
+            int to = from;
+            long bytes = 0;
+            byte[] header = currentHeader;
+            while (to < records.size()) {
+                byte[] record = records.get(to);
+                boolean isHeader = isHeader(record);
+                if (to > from && (exceedsSize(bytes + record.length) || (isHeader && changesHeader(record, header)))) {
+                    break;
+                }
+                if (isHeader) {
+                    header = record;
+                }
+                bytes += record.length;
+                to++;
+            }
+            current.write(records.subList(from, to));
+            currentBytes += bytes;
+            for (int i = from; i < to; i++) {
+                trackHeader(records.get(i));
+            }
+            from = to;
+        }
+    }
+
+    private boolean exceedsSize(long additionalBytes) {
+        return maxBytes > 0 && currentBytes > 0 && currentBytes + additionalBytes > maxBytes;
+    }
+
+    private boolean isHeader(byte[] record) {
+        return headerRecords != null && headerRecords.test(record);
+    }
+
+    private static boolean changesHeader(byte[] header, byte[] segmentHeader) {
+        return segmentHeader != null && !Arrays.equals(header, segmentHeader);
+    }
+
+    private void trackHeader(byte[] record) {
+        if (isHeader(record)) {
+            lastHeader = record;
+            currentHeader = record;
+        }
+    }
+
+    private void prepare(byte[] first) throws IOException {
+        if (current != null && (exceedsSize(first.length)
+                || (maxAgeMillis > 0 && System.currentTimeMillis() - openedAt >= maxAgeMillis)
+                || (isHeader(first) && changesHeader(first, currentHeader)))) {
+            seal();
+        }
+        if (current == null) {
+            index++;
+            currentPath = directory.resolve(String.format("%s.%05d.%s", baseName, index, extension));
+            current = segmentFactory.open(currentPath);
+            segments.add(currentPath);
+            currentBytes = 0;
+            openedAt = System.currentTimeMillis();
+            logger.info("Started output segment {}", currentPath);
+            if (lastHeader != null && !isHeader(first)) {
+                current.write(lastHeader);
+                currentBytes += lastHeader.length;
+                currentHeader = lastHeader;
+            }
+        }
+    }
+
+    private void seal() throws IOException {
+        current.close();
+        current = null;
+        currentHeader = null;
+        if (!currentPath.toFile().setReadOnly()) {
+            logger.warn("Could not make segment {} read-only", currentPath);
+        }
+        logger.info("Sealed output segment {} ({} bytes before compression)", currentPath, currentBytes);
+    }
+
+    Path getCurrentPath() {
+        return currentPath;
+    }
+
+    /**
+     * Segments started by this sink, in the order they were written.
+     */
+    List<Path> getSegments() {
+        return List.copyOf(segments);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (current != null) {
+            current.flush();
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        if (current != null) {
+            current.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            seal();
+        }
+    }
+}
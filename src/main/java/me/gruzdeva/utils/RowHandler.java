@@ -0,0 +1,15 @@
+package me.gruzdeva.utils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the flat rows extracted from a response by {@link JsonRowReader}.
+ * The lists are only valid during the call, the values are buffers that are reused for the next row,
+ * implementations must copy what they keep.
+ */
+interface RowHandler {
+    void header(List<String> columns) throws IOException;
+
+    void row(List<? extends CharSequence> values) throws IOException;
+}
@@ -1,13 +1,124 @@
 package me.gruzdeva.utils;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import me.gruzdeva.api.ApiClient;
+import me.gruzdeva.config.ConfigManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-@AllArgsConstructor
+/**
+ * A service polled by {@link ApiTaskPooler}. The interval until the next poll adapts to the service:
+ * after {@code backoffAfter} successive polls without new data (or with errors) it is multiplied by
+ * {@code backoffFactor}, every poll with new data shortens it by {@code speedupMillis}, always within
+ * {@code [minInterval, maxInterval]}. A task is polled by one thread at a time, so only that thread changes it.
+ */
 @Getter
 public class ServiceTask {
+    private final static Logger logger = LoggerFactory.getLogger(ServiceTask.class);
+
+    private final static int DEFAULT_MAX_INTERVAL_FACTOR = 8;
+    private final static double DEFAULT_BACKOFF_FACTOR = 2.0;
+    private final static int DEFAULT_BACKOFF_AFTER = 2;
+
     private final ApiClient apiClient;
+    // the configured interval, where the adaptive interval starts
     private final int timeout;
     private final DataProcessor dataProcessor;
+    private final int minInterval;
+    private final int maxInterval;
+    private final double backoffFactor;
+    private final int speedupMillis;
+    private final int backoffAfter;
+
+    private volatile int interval;
+    private int quietPolls;
+    // failed requests since the last one that got an answer
+    private int retries;
+
+    /**
+     * Reads the bounds from the polling.* properties, polling.&lt;service&gt;.* overrides them for one service.
+     * Adaptive polling is on by default; with polling.adaptive=false (or polling.&lt;service&gt;.adaptive=false)
+     * the interval stays at timeout.
+     */
+    public ServiceTask(ApiClient apiClient, int timeout, DataProcessor dataProcessor) {
+        this(apiClient, timeout, dataProcessor,
+                isAdaptive(apiClient) ? pollingProperty(apiClient, "min_ms", timeout) : timeout,
+                isAdaptive(apiClient) ? pollingProperty(apiClient, "max_ms", timeout * DEFAULT_MAX_INTERVAL_FACTOR) : timeout,
+                ConfigManager.getDoubleProperty("polling.backoff_factor", DEFAULT_BACKOFF_FACTOR),
+                pollingProperty(apiClient, "speedup_ms", timeout),
+                ConfigManager.getIntProperty("polling.backoff_after", DEFAULT_BACKOFF_AFTER));
+    }
+
+    public ServiceTask(ApiClient apiClient, int timeout, DataProcessor dataProcessor, int minInterval, int maxInterval,
+                       double backoffFactor, int speedupMillis, int backoffAfter) {
+        this.apiClient = apiClient;
+        this.timeout = timeout;
+        this.dataProcessor = dataProcessor;
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+        this.backoffFactor = backoffFactor;
+        this.speedupMillis = speedupMillis;
+        this.backoffAfter = backoffAfter;
+        this.interval = Math.min(this.maxInterval, Math.max(minInterval, timeout));
+    }
+
+    private static boolean isAdaptive(ApiClient apiClient) {
+        String adaptive = ConfigManager.getProperty("polling." + apiClient.getServiceName() + ".adaptive");
+        if (adaptive == null || adaptive.isBlank()) {
+            adaptive = ConfigManager.getProperty("polling.adaptive");
+        }
+        return !"false".equalsIgnoreCase(adaptive == null ? null : adaptive.trim());
+    }
+
+    private static int pollingProperty(ApiClient apiClient, String name, int defaultValue) {
+        return ConfigManager.getIntProperty("polling." + apiClient.getServiceName() + "." + name,
+                ConfigManager.getIntProperty("polling." + name, defaultValue));
+    }
+
+    /**
+     * The poll returned data that was written.
+     */
+    void onChanged() {
+        quietPolls = 0;
+        setInterval(Math.max(minInterval, interval - speedupMillis));
+    }
+
+    /**
+     * The poll returned nothing new (not modified, duplicate or empty).
+     */
+    void onUnchanged() {
+        backOff();
+    }
+
+    /**
+     * The poll failed.
+     */
+    void onError() {
+        backOff();
+    }
+
+    /**
+     * Counts a failed request, returns the number of the retry that follows it.
+     */
+    int nextRetry() {
+        return ++retries;
+    }
+
+    void resetRetries() {
+        retries = 0;
+    }
+
+    private void backOff() {
+        quietPolls++;
+        if (quietPolls >= backoffAfter) {
+            setInterval((int) Math.min(maxInterval, Math.ceil(interval * backoffFactor)));
+        }
+    }
+
+    private void setInterval(int newInterval) {
+        if (newInterval != interval) {
+            logger.debug("Polling interval of {} changed from {} to {} ms", apiClient.getServiceName(), interval, newInterval);
+            interval = newInterval;
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package me.gruzdeva.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket: {@code permitsPerMinute} requests on average, up to {@code burst} at once.
+ * <p>
+ * Instead of a token count the bucket keeps a single timestamp, the time at which it will be full again
+ * (the generic cell rate algorithm). Taking a token moves it forward by one emission interval; a request is allowed
+ * while that time is at most {@code burst} intervals ahead of now. One CAS per request, no refill thread.
+ */
+class TokenBucket {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    // System.nanoTime() at which the bucket is full again
+    private final AtomicLong fullAt;
+
+    TokenBucket(double permitsPerMinute, int burst) {
+        this.intervalNanos = (long) (TimeUnit.MINUTES.toNanos(1) / permitsPerMinute);
+        this.toleranceNanos = intervalNanos * Math.max(1, burst);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token if one is available and returns 0, otherwise returns how many milliseconds
+     * to wait before trying again (no token is taken in that case).
+     */
+    long tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long wait = next - now - toleranceNanos;
+            if (wait > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Empties the bucket until the given delay has passed, e.g. when the service answered with Retry-After.
+     * Afterwards it refills at the normal rate, so there is no burst right after the pause.
+     */
+    void pause(long delayMillis) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) + toleranceNanos - intervalNanos;
+        fullAt.accumulateAndGet(until, Math::max);
+    }
+}
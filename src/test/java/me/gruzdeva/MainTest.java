@@ -45,7 +45,7 @@ class MainTest {
         return Stream.of(
                 // Wrong number of arguments
                 Arguments.of(new String[]{"5", "10", "NYTimes"},
-                        "Please provide correct arguments: maxThreads, timeout, services (comma-separated), and output format (json/csv).\nUsage: <threads> <timeout> <services> <format>\nExample: 5 10 NYTimes,CatFacts json"),
+                        "Please provide correct arguments: maxThreads, timeout, services (comma-separated), and output format (json/csv/ndjson/columnar).\nUsage: <threads> <timeout> <services> <format>\nExample: 5 10 NYTimes,CatFacts json"),
 
                 // Invalid maxThreads
                 Arguments.of(new String[]{"abc", "10", "NYTimes", "json"},
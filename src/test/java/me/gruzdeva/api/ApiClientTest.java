@@ -5,10 +5,13 @@ import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.message.BasicHeader;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.MockedStatic;
 
 import java.io.IOException;
@@ -29,6 +32,14 @@ class ApiClientTest {
         assertInstanceOf(CloseableHttpClient.class, client);
     }
 
+    @Test
+    void getHttpClient_shouldReturnSharedInstance() {
+        CloseableHttpClient first = ApiClient.getHttpClient();
+        CloseableHttpClient second = ApiClient.getHttpClient();
+
+        assertSame(first, second);
+    }
+
     @Test
     void when_getApiClientWithValidService_return_correctImplementation() {
         ApiClient nyTimesClient = ApiClient.getApiClient(ApiClient.SERVICE_NYTIMES);
@@ -55,7 +66,7 @@ class ApiClientTest {
     }
 
     @Test
-    void when_callApiWithValidUrl_return_jsonNode() throws Exception {
+    void when_callApiWithValidUrl_return_payload() throws Exception {
         String testJson = "{\"key\":\"value\"}";
         String testUrl = "https://test.url";
 
@@ -71,15 +82,22 @@ class ApiClientTest {
             when(mockResponse.getEntity()).thenReturn(mockEntity);
 
             try (MockedStatic<EntityUtils> entityUtilsMock = mockStatic(EntityUtils.class)) {
-                entityUtilsMock.when(() -> EntityUtils.toString(any())).thenReturn(testJson);
+                entityUtilsMock.when(() -> EntityUtils.toByteArray(any())).thenReturn(testJson.getBytes());
 
-                apiClientMock.when(() -> ApiClient.callApi(anyString())).thenCallRealMethod();
+                apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenCallRealMethod();
 
-                JsonNode result = ApiClient.callApi(testUrl);
+                ApiPayload result = ApiClient.callApi("TestService", testUrl);
 
                 assertNotNull(result);
-                assertTrue(result.has("key"));
-                assertEquals("value", result.get("key").asText());
+                assertEquals("TestService", result.getServiceName());
+                assertNotNull(result.getFetchedAt());
+                assertEquals(testJson, result.getBodyAsString());
+
+                JsonNode tree = result.getTree();
+                assertTrue(tree.has("key"));
+                assertEquals("value", tree.get("key").asText());
+                // parsed at most once
+                assertSame(tree, result.getTree());
             }
         }
     }
@@ -95,12 +113,12 @@ class ApiClientTest {
             when(mockResponse.getCode()).thenReturn(404);
             when(mockResponse.getReasonPhrase()).thenReturn("Not Found");
 
-            apiClientMock.when(() -> ApiClient.callApi(anyString())).thenCallRealMethod();
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenCallRealMethod();
 
             String testUrl = "https://test.url";
             Exception exception = assertThrows(
                     Exception.class,
-                    () -> ApiClient.callApi(testUrl)
+                    () -> ApiClient.callApi("TestService", testUrl)
             );
 
             assertEquals(testUrl + " Failed to fetch data : " + "Not Found", exception.getMessage());
@@ -108,6 +126,124 @@ class ApiClientTest {
         }
     }
 
+    @Test
+    void when_callApiAnsweredWithNotModified_return_notModifiedPayload() throws Exception {
+        String testUrl = "https://test.url/conditional";
+        ValidatorCache.clear();
+
+        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class);
+             MockedStatic<EntityUtils> entityUtilsMock = mockStatic(EntityUtils.class)) {
+            CloseableHttpClient mockClient = mock(CloseableHttpClient.class);
+            CloseableHttpResponse okResponse = mock(CloseableHttpResponse.class);
+            CloseableHttpResponse notModifiedResponse = mock(CloseableHttpResponse.class);
+
+            apiClientMock.when(ApiClient::getHttpClient).thenReturn(mockClient);
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenCallRealMethod();
+            when(okResponse.getCode()).thenReturn(200);
+            when(okResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+            when(notModifiedResponse.getCode()).thenReturn(304);
+            when(mockClient.execute(any(HttpGet.class))).thenReturn(okResponse, notModifiedResponse);
+            entityUtilsMock.when(() -> EntityUtils.toByteArray(any())).thenReturn("{}".getBytes());
+
+            ApiPayload first = ApiClient.callApi("TestService", testUrl);
+            first.commit();
+            ApiPayload second = ApiClient.callApi("TestService", testUrl);
+
+            assertFalse(first.isNotModified());
+            assertTrue(second.isNotModified());
+            assertTrue(second.isEmpty());
+
+            ArgumentCaptor<HttpGet> requests = ArgumentCaptor.forClass(HttpGet.class);
+            verify(mockClient, times(2)).execute(requests.capture());
+            assertNull(requests.getAllValues().get(0).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+            assertEquals("\"v1\"", requests.getAllValues().get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+        } finally {
+            ValidatorCache.clear();
+        }
+    }
+
+    @Test
+    void when_callApiResponseNotCommitted_nextRequest_isNotConditional() throws Exception {
+        String testUrl = "https://test.url/uncommitted";
+        ValidatorCache.clear();
+
+        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class);
+             MockedStatic<EntityUtils> entityUtilsMock = mockStatic(EntityUtils.class)) {
+            CloseableHttpClient mockClient = mock(CloseableHttpClient.class);
+            CloseableHttpResponse okResponse = mock(CloseableHttpResponse.class);
+
+            apiClientMock.when(ApiClient::getHttpClient).thenReturn(mockClient);
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenCallRealMethod();
+            when(okResponse.getCode()).thenReturn(200);
+            when(okResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+            when(mockClient.execute(any(HttpGet.class))).thenReturn(okResponse);
+            entityUtilsMock.when(() -> EntityUtils.toByteArray(any())).thenReturn("{}".getBytes());
+
+            // the first response was never written, e.g. processing failed
+            ApiClient.callApi("TestService", testUrl);
+            ApiPayload second = ApiClient.callApi("TestService", testUrl);
+
+            assertFalse(second.isNotModified());
+            assertFalse(ValidatorCache.contains(testUrl));
+            ArgumentCaptor<HttpGet> requests = ArgumentCaptor.forClass(HttpGet.class);
+            verify(mockClient, times(2)).execute(requests.capture());
+            assertNull(requests.getAllValues().get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+        } finally {
+            ValidatorCache.clear();
+        }
+    }
+
+    @Test
+    void when_callApiBodyReadExceedsDeadline_throw_cancelledException() throws Exception {
+        System.setProperty("http.timeout.SlowBodyService.total_ms", "50");
+        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class);
+             MockedStatic<EntityUtils> entityUtilsMock = mockStatic(EntityUtils.class)) {
+            CloseableHttpClient mockClient = mock(CloseableHttpClient.class);
+            CloseableHttpResponse okResponse = mock(CloseableHttpResponse.class);
+
+            apiClientMock.when(ApiClient::getHttpClient).thenReturn(mockClient);
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenCallRealMethod();
+            when(okResponse.getCode()).thenReturn(200);
+            when(mockClient.execute(any(HttpGet.class))).thenReturn(okResponse);
+            // the body arrives slowly, the read fails once the deadline has cancelled the request
+            entityUtilsMock.when(() -> EntityUtils.toByteArray(any())).thenAnswer(invocation -> {
+                Thread.sleep(300);
+                throw new IOException("Connection closed");
+            });
+
+            IOException exception = assertThrows(IOException.class,
+                    () -> ApiClient.callApi("SlowBodyService", "https://test.url/slow"));
+
+            assertEquals("ErrApiClient004", exception.getMessage());
+        } finally {
+            System.clearProperty("http.timeout.SlowBodyService.total_ms");
+        }
+    }
+
+    @Test
+    void when_callApiReturnsTooManyRequests_throw_rateLimitedException() throws Exception {
+        CloseableHttpClient mockClient = mock(CloseableHttpClient.class);
+        CloseableHttpResponse mockResponse = mock(CloseableHttpResponse.class);
+
+        // private helpers must run for real, only the client is replaced
+        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class, CALLS_REAL_METHODS)) {
+            apiClientMock.when(ApiClient::getHttpClient).thenReturn(mockClient);
+            when(mockClient.execute(any(HttpGet.class))).thenReturn(mockResponse);
+            when(mockResponse.getCode()).thenReturn(429);
+            when(mockResponse.getFirstHeader(HttpHeaders.RETRY_AFTER))
+                    .thenReturn(new BasicHeader(HttpHeaders.RETRY_AFTER, "30"));
+
+            RateLimitedException exception = assertThrows(
+                    RateLimitedException.class,
+                    () -> ApiClient.callApi("TestService", "https://test.url")
+            );
+
+            assertEquals("ErrApiClient003", exception.getMessage());
+            assertEquals("TestService", exception.getServiceName());
+            assertEquals(30_000, exception.getRetryAfterMillis());
+        }
+    }
+
     @Test
     void when_callApiThrowsIOException_throw_wrappedException() throws Exception {
         CloseableHttpClient mockClient = mock(CloseableHttpClient.class);
@@ -116,12 +252,12 @@ class ApiClientTest {
             apiClientMock.when(ApiClient::getHttpClient).thenReturn(mockClient);
             when(mockClient.execute(any(HttpGet.class))).thenThrow(new IOException("Connection refused"));
 
-            apiClientMock.when(() -> ApiClient.callApi(anyString())).thenCallRealMethod();
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenCallRealMethod();
 
             String testUrl = "https://test.url";
             IOException exception = assertThrows(
                     IOException.class,
-                    () -> ApiClient.callApi(testUrl)
+                    () -> ApiClient.callApi("TestService", testUrl)
             );
 
             assertEquals("ErrApiClient002", exception.getMessage());
@@ -1,26 +1,23 @@
 package me.gruzdeva.api;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class CatFactsServiceTest {
 
     private CatFactsService service;
-    private JsonNode mockJsonNode;
 
     @BeforeEach
     void setUp() {
         service = new CatFactsService();
-        mockJsonNode = mock(JsonNode.class);
     }
 
     @Test
@@ -31,62 +28,57 @@ class CatFactsServiceTest {
     @Test
     void fetchData_shouldReturnValidJson() throws Exception {
         String expectedJson = "{\"fact\":\"Cats sleep 16 hours a day.\"}";
-        JsonNode mockResultNode = new ObjectMapper().readTree(expectedJson);
+        ApiPayload mockPayload = ApiPayload.of(ApiClient.SERVICE_CAT_FACTS, expectedJson);
 
         try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
             // Mock the API call
-            apiClientMock.when(() -> ApiClient.callApi(anyString())).thenReturn(mockResultNode);
-
-            // Mock JSON serialization if it's using ApiClient.serializeToJson
-            apiClientMock.when(() -> ApiClient.serializeToJson(any())).thenReturn(expectedJson);
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenReturn(mockPayload);
 
             // Execute test
-            String result = service.fetchData();
+            ApiPayload result = service.fetchData();
 
             // Assert
             assertNotNull(result);
-            JsonNode resultNode = new ObjectMapper().readTree(result);
+            JsonNode resultNode = result.getTree();
             assertTrue(resultNode.has("fact"));
 
             // Verify API call was made with correct URL
-            apiClientMock.verify(() -> ApiClient.callApi(contains("/fact")));
+            apiClientMock.verify(() -> ApiClient.callApi(eq(ApiClient.SERVICE_CAT_FACTS), contains("/fact")));
         }
     }
 
     @Test
-    void fetchData_whenJsonProcessingException_shouldThrowIllegalArgumentException() throws Exception {
-        // Instead of modifying the objectMapper directly, we'll mock the ApiClient's static methods
-        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            apiClientMock.when(() -> ApiClient.callApi(anyString()))
-                    .thenReturn(mockJsonNode);
+    void fetchData_whenApiCallFails_shouldPropagateException() throws Exception {
+        String errorMessage = "API connection failed";
 
-            // mock the entire JSON serialization process
-            apiClientMock.when(() -> ApiClient.serializeToJson(any(JsonNode.class)))
-                    .thenThrow(new JsonProcessingException("JSON error") {});
+        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString()))
+                    .thenThrow(new Exception(errorMessage));
 
             Exception exception = assertThrows(
-                    IllegalArgumentException.class,
+                    Exception.class,
                     () -> service.fetchData()
             );
 
-            assertEquals("ErrCatFact001.", exception.getMessage());
+            assertEquals(errorMessage, exception.getMessage());
         }
     }
 
     @Test
-    void fetchData_whenApiCallFails_shouldPropagateException() throws Exception {
-        String errorMessage = "API connection failed";
+    void fetchDataAsync_shouldReturnValidJson() throws Exception {
+        String expectedJson = "{\"fact\":\"Cats sleep 16 hours a day.\"}";
+        ApiPayload mockPayload = ApiPayload.of(ApiClient.SERVICE_CAT_FACTS, expectedJson);
 
         try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            apiClientMock.when(() -> ApiClient.callApi(anyString()))
-                    .thenThrow(new Exception(errorMessage));
+            apiClientMock.when(() -> ApiClient.callApiAsync(anyString(), anyString()))
+                    .thenReturn(CompletableFuture.completedFuture(mockPayload));
 
-            Exception exception = assertThrows(
-                    Exception.class,
-                    () -> service.fetchData()
-            );
+            ApiPayload result = service.fetchDataAsync().get();
 
-            assertEquals(errorMessage, exception.getMessage());
+            assertNotNull(result);
+            assertTrue(result.getTree().has("fact"));
+            apiClientMock.verify(() -> ApiClient.callApiAsync(eq(ApiClient.SERVICE_CAT_FACTS), contains("/fact")));
+            apiClientMock.verify(() -> ApiClient.callApi(anyString(), anyString()), never());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+package me.gruzdeva.api;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyTrackerTest {
+
+    @BeforeEach
+    @AfterEach
+    void clear() {
+        LatencyTracker.clear();
+    }
+
+    @Test
+    void percentile_shouldUseRecordedLatencies() {
+        for (int i = 1; i <= 100; i++) {
+            LatencyTracker.record("TestService", i);
+        }
+
+        assertEquals(50, LatencyTracker.percentile("TestService", 0.5));
+        assertEquals(95, LatencyTracker.percentile("TestService", 0.95));
+        assertEquals(100, LatencyTracker.percentile("TestService", 1.0));
+    }
+
+    @Test
+    void percentile_shouldOnlyKeepRecentLatencies() {
+        for (int i = 0; i < 1000; i++) {
+            LatencyTracker.record("TestService", i < 500 ? 10_000 : 10);
+        }
+
+        assertEquals(10, LatencyTracker.percentile("TestService", 1.0));
+    }
+
+    @Test
+    void percentile_withoutLatencies_shouldReturnMinusOne() {
+        assertEquals(-1, LatencyTracker.percentile("TestService", 0.95));
+    }
+
+    @Test
+    void hedgeDelayMillis_whenHedgingDisabled_shouldReturnMinusOne() {
+        for (int i = 0; i < 100; i++) {
+            LatencyTracker.record("TestService", 200);
+        }
+
+        assertFalse(LatencyTracker.isHedged("TestService"));
+        assertEquals(-1, LatencyTracker.hedgeDelayMillis("TestService"));
+    }
+}
@@ -1,25 +1,23 @@
 package me.gruzdeva.api;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class NYTimesServiceTest {
 
     private NYTimesService service;
-    private JsonNode mockJsonNode;
+    private ApiPayload mockPayload;
 
     @BeforeEach
     void setUp() {
         service = new NYTimesService();
-        mockJsonNode = mock(JsonNode.class);
+        mockPayload = mock(ApiPayload.class);
     }
 
     @Test
@@ -32,13 +30,13 @@ class NYTimesServiceTest {
         int timePeriod = 1;
 
         try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            apiClientMock.when(() -> ApiClient.callApi(anyString()))
-                    .thenReturn(mockJsonNode);
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString()))
+                    .thenReturn(mockPayload);
 
             NYTimesService.fetchMostViewedArticles(timePeriod);
 
-            apiClientMock.verify(() -> ApiClient.callApi(contains("/viewed/" + timePeriod + ".json")));
-            apiClientMock.verify(() -> ApiClient.callApi(contains("api-key=")));
+            apiClientMock.verify(() -> ApiClient.callApi(eq(ApiClient.SERVICE_NYTIMES), contains("/viewed/" + timePeriod + ".json")));
+            apiClientMock.verify(() -> ApiClient.callApi(anyString(), contains("api-key=")));
         } catch (Exception e) {
             fail("Exception should not be thrown: " + e.getMessage());
         }
@@ -48,36 +46,92 @@ class NYTimesServiceTest {
     void fetchData_shouldReturnValidJson() {
         try {
             String mockJson = "{\"results\":[{\"title\":\"Test Article\",\"abstract\":\"Test content\"}]}";
-            JsonNode mockResultNode = new ObjectMapper().readTree(mockJson);
+            ApiPayload payload = ApiPayload.of(ApiClient.SERVICE_NYTIMES, mockJson);
 
 
             try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
                 // First mock the API call that happens inside fetchMostViewedArticles
-                apiClientMock.when(() -> ApiClient.callApi(anyString())).thenReturn(mockResultNode);
+                apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenReturn(payload);
 
-                apiClientMock.when(() -> ApiClient.serializeToJson(any())).thenReturn(mockJson);
-
-                String result = service.fetchData();
+                ApiPayload result = service.fetchData();
 
                 assertNotNull(result);
-                JsonNode resultNode = new ObjectMapper().readTree(result);
-                assertTrue(resultNode.has("results"));
+                JsonNode resultNode = result.getTree();
+                assertTrue(resultNode.has("changes"));
 
                 // check structure
-                assertTrue(resultNode.get("results").isArray());
-                assertFalse(resultNode.get("results").isEmpty());
+                assertTrue(resultNode.get("changes").isArray());
+                assertFalse(resultNode.get("changes").isEmpty());
             }
         } catch (Exception e) {
             fail("Exception should not be thrown: " + e.getMessage());
         }
     }
 
+    @Test
+    void fetchMostViewedArticles_shouldEmitOnlyChangesSincePreviousPoll() throws Exception {
+        // a period no other test uses, the article index is kept per period
+        int timePeriod = 101;
+        String firstPoll = "{\"results\":[{\"id\":1,\"url\":\"u1\",\"title\":\"A\"},"
+                + "{\"id\":2,\"url\":\"u2\",\"title\":\"B\"},{\"id\":3,\"url\":\"u3\",\"title\":\"C\"}]}";
+        String secondPoll = "{\"results\":[{\"id\":2,\"url\":\"u2\",\"title\":\"B\"},"
+                + "{\"id\":1,\"url\":\"u1\",\"title\":\"A2\"},{\"id\":4,\"url\":\"u4\",\"title\":\"D\"}]}";
+
+        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenReturn(
+                    ApiPayload.of(ApiClient.SERVICE_NYTIMES, firstPoll),
+                    ApiPayload.of(ApiClient.SERVICE_NYTIMES, secondPoll),
+                    ApiPayload.of(ApiClient.SERVICE_NYTIMES, secondPoll));
+
+            ApiPayload firstPayload = NYTimesService.fetchMostViewedArticles(timePeriod);
+            JsonNode first = firstPayload.getTree().get("changes");
+            assertEquals(3, first.size());
+            first.forEach(event -> assertEquals("new", event.get("change").asText()));
+            firstPayload.commit();
+
+            ApiPayload secondPayload = NYTimesService.fetchMostViewedArticles(timePeriod);
+            JsonNode second = secondPayload.getTree().get("changes");
+            assertEquals(4, second.size());
+            assertEquals("rank", second.get(0).get("change").asText());
+            assertEquals(1, second.get(0).get("rank").asInt());
+            assertEquals(2, second.get(0).get("previous_rank").asInt());
+            assertEquals("changed", second.get(1).get("change").asText());
+            assertEquals("A2", second.get(1).get("title").asText());
+            assertEquals("new", second.get(2).get("change").asText());
+            assertEquals("removed", second.get(3).get("change").asText());
+            assertEquals("u3", second.get(3).get("url").asText());
+
+            secondPayload.commit();
+
+            assertTrue(NYTimesService.fetchMostViewedArticles(timePeriod).isNotModified());
+        }
+    }
+
+    @Test
+    void fetchMostViewedArticles_withoutCommit_shouldReportChangesAgain() throws Exception {
+        int timePeriod = 102;
+        String poll = "{\"results\":[{\"id\":1,\"url\":\"u1\",\"title\":\"A\"}]}";
+
+        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenAnswer(
+                    invocation -> ApiPayload.of(ApiClient.SERVICE_NYTIMES, poll));
+
+            // the first payload was not written, e.g. the output failed
+            NYTimesService.fetchMostViewedArticles(timePeriod);
+            ApiPayload retried = NYTimesService.fetchMostViewedArticles(timePeriod);
+
+            assertEquals("new", retried.getTree().get("changes").get(0).get("change").asText());
+            retried.commit();
+            assertTrue(NYTimesService.fetchMostViewedArticles(timePeriod).isNotModified());
+        }
+    }
+
     @Test
     void fetchData_whenApiCallFails_shouldPropagateException() throws Exception {
         String errorMessage = "API connection failed";
 
         try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            apiClientMock.when(() -> ApiClient.callApi(anyString()))
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString()))
                     .thenThrow(new Exception(errorMessage));
 
             Exception exception = assertThrows(
@@ -90,4 +144,4 @@ class NYTimesServiceTest {
             fail("Exception should not be thrown: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,26 +1,23 @@
 package me.gruzdeva.api;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class WeatherServiceTest {
 
     private WeatherService service;
-    private JsonNode mockJsonNode;
+    private ApiPayload mockPayload;
 
     @BeforeEach
     void setUp() {
         service = new WeatherService();
-        mockJsonNode = mock(JsonNode.class);
+        mockPayload = mock(ApiPayload.class);
     }
 
     @Test
@@ -31,19 +28,16 @@ class WeatherServiceTest {
     @Test
     void fetchData_shouldReturnValidJson() throws Exception {
         String mockJson = "{\"location\":{\"name\":\"London\"},\"current\":{\"temperature\":15}}";
-        JsonNode mockResultNode = new ObjectMapper().readTree(mockJson);
+        ApiPayload payload = ApiPayload.of(ApiClient.SERVICE_WEATHER, mockJson);
 
         try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            apiClientMock.when(() -> ApiClient.callApi(anyString()))
-                    .thenReturn(mockResultNode);
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString()))
+                    .thenReturn(payload);
 
-            apiClientMock.when(() -> ApiClient.serializeToJson(any(JsonNode.class)))
-                    .thenReturn(mockJson);
-
-            String result = service.fetchData();
+            ApiPayload result = service.fetchData();
 
             assertNotNull(result);
-            JsonNode resultNode = new ObjectMapper().readTree(result);
+            JsonNode resultNode = result.getTree();
             assertTrue(resultNode.has("location"));
             assertTrue(resultNode.has("current"));
         }
@@ -54,36 +48,13 @@ class WeatherServiceTest {
         String city = "Tokyo";
 
         try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            apiClientMock.when(() -> ApiClient.callApi(anyString()))
-                    .thenReturn(mockJsonNode);
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString()))
+                    .thenReturn(mockPayload);
 
             WeatherService.fetchCurrentWeather(city);
 
-            apiClientMock.verify(() -> ApiClient.callApi(contains("query=" + city)));
-            apiClientMock.verify(() -> ApiClient.callApi(contains("access_key=")));
-        }
-    }
-
-    @Test
-    void fetchData_whenJsonProcessingException_shouldThrowIllegalArgumentException() throws Exception {
-        try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            // Mock the API call
-            apiClientMock.when(() -> ApiClient.callApi(anyString()))
-                    .thenReturn(mockJsonNode);
-
-            // Mock JSON serialization to throw exception
-            apiClientMock.when(() -> ApiClient.serializeToJson(any(JsonNode.class)))
-                    .thenThrow(new JsonProcessingException("JSON error") {});
-
-            // Test & verify exception
-            Exception exception = assertThrows(
-                    IllegalArgumentException.class,
-                    () -> service.fetchData()
-            );
-
-            assertEquals("ErrWeather001.", exception.getMessage());
-            assertNotNull(exception.getCause());
-            assertInstanceOf(JsonProcessingException.class, exception.getCause());
+            apiClientMock.verify(() -> ApiClient.callApi(eq(ApiClient.SERVICE_WEATHER), contains("query=" + city)));
+            apiClientMock.verify(() -> ApiClient.callApi(anyString(), contains("access_key=")));
         }
     }
 
@@ -92,7 +63,7 @@ class WeatherServiceTest {
         String errorMessage = "API connection failed";
 
         try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            apiClientMock.when(() -> ApiClient.callApi(anyString()))
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString()))
                     .thenThrow(new Exception(errorMessage));
 
             Exception exception = assertThrows(
@@ -109,11 +80,11 @@ class WeatherServiceTest {
         String city = "London";
 
         try (MockedStatic<ApiClient> apiClientMock = mockStatic(ApiClient.class)) {
-            apiClientMock.when(() -> ApiClient.callApi(anyString())).thenReturn(mockJsonNode);
+            apiClientMock.when(() -> ApiClient.callApi(anyString(), anyString())).thenReturn(mockPayload);
 
             WeatherService.fetchCurrentWeather(city);
 
-            apiClientMock.verify(() -> ApiClient.callApi(matches(".*access_key=[^&]+&query=" + city)));
+            apiClientMock.verify(() -> ApiClient.callApi(anyString(), matches(".*access_key=[^&]+&query=" + city)));
         }
     }
-}
\ No newline at end of file
+}
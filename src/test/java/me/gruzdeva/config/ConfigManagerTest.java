@@ -1,5 +1,6 @@
 package me.gruzdeva.config;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -22,4 +23,51 @@ class ConfigManagerTest {
         String value = ConfigManager.getProperty(key);
         assertNull(value, "Non-existent property should return null");
     }
-}
\ No newline at end of file
+
+    @Test
+    void whenSystemPropertySet_shouldOverrideConfigFile() {
+        String key = "catfacts.url.base";
+        String fileValue = ConfigManager.getProperty(key);
+        System.setProperty(key, "http://127.0.0.1:8080");
+        try {
+            assertEquals("http://127.0.0.1:8080", ConfigManager.getProperty(key));
+        } finally {
+            System.clearProperty(key);
+        }
+        assertEquals(fileValue, ConfigManager.getProperty(key));
+    }
+
+    @Test
+    void whenSystemPropertySetForMissingKey_shouldReturnIt() {
+        System.setProperty("test.override.only", "42");
+        try {
+            assertEquals(42, ConfigManager.getIntProperty("test.override.only", 0));
+        } finally {
+            System.clearProperty("test.override.only");
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "2048"})
+    void whenIntPropertyOutOfRange_shouldThrow(String value) {
+        System.setProperty("test.range", value);
+        try {
+            RuntimeException exception = assertThrows(RuntimeException.class,
+                    () -> ConfigManager.getIntProperty("test.range", 64, 1, 2047));
+            assertEquals("ErrConfig006", exception.getMessage());
+        } finally {
+            System.clearProperty("test.range");
+        }
+    }
+
+    @Test
+    void whenIntPropertyInRangeOrMissing_shouldReturnIt() {
+        System.setProperty("test.range", "2047");
+        try {
+            assertEquals(2047, ConfigManager.getIntProperty("test.range", 64, 1, 2047));
+        } finally {
+            System.clearProperty("test.range");
+        }
+        assertEquals(64, ConfigManager.getIntProperty("test.range", 64, 1, 2047));
+    }
+}
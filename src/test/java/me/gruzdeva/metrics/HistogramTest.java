@@ -0,0 +1,111 @@
+package me.gruzdeva.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    @Test
+    void bucketOf_shouldContainValueWithinSixPercent() {
+        for (long value = 1; value < (1L << 40); value = value * 3 / 2 + 1) {
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(bucket < Histogram.BUCKETS);
+            long highest = Histogram.highestValueOf(bucket);
+            assertTrue(highest >= value, "value " + value);
+            assertTrue(highest - value <= value / 16, "value " + value + " reported as " + highest);
+            assertTrue(bucket == 0 || Histogram.highestValueOf(bucket - 1) < value, "value " + value);
+        }
+    }
+
+    @Test
+    void percentile_shouldReturnRecordedDistribution() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_000, histogram.percentile(0.5), 500_000 / 16.0);
+        assertEquals(990_000, histogram.percentile(0.99), 990_000 / 16.0);
+        assertEquals(1_000_000, histogram.percentile(1.0));
+    }
+
+    @Test
+    void snapshot_shouldConvertToMillis() {
+        Histogram histogram = new Histogram();
+        histogram.record(2_000_000);
+        histogram.record(4_000_000);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(3.0, snapshot.getMeanMillis(), 0.001);
+        assertEquals(4.0, snapshot.getMaxMillis(), 0.001);
+        assertEquals(2.0, snapshot.getP50Millis(), 2.0 / 16);
+    }
+
+    @Test
+    void add_shouldCombineRecordedValues() {
+        Histogram fast = new Histogram();
+        Histogram slow = new Histogram();
+        for (int i = 0; i < 90; i++) {
+            fast.record(1_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            slow.record(1_000_000);
+        }
+
+        Histogram all = new Histogram();
+        all.add(fast);
+        all.add(slow);
+
+        assertEquals(100, all.getCount());
+        assertEquals(1_000_000, all.getMax());
+        assertEquals(1_000, all.percentile(0.9), 1_000 / 16.0);
+        assertEquals(1_000_000, all.percentile(0.95), 1_000_000 / 16.0);
+    }
+
+    @Test
+    void percentile_withoutValues_shouldReturnZero() {
+        assertEquals(0, new Histogram().percentile(0.99));
+        assertEquals(0, new Histogram().snapshot().getMeanMillis());
+    }
+
+    @Test
+    void record_shouldClampOutOfRangeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.percentile(0.5));
+        assertTrue(histogram.percentile(1.0) > 0);
+    }
+
+    @Test
+    void record_fromManyThreads_shouldCountEveryValue() throws Exception {
+        Histogram histogram = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(9_999, histogram.getMax());
+    }
+}
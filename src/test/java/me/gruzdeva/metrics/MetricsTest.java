@@ -0,0 +1,47 @@
+package me.gruzdeva.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void service_shouldBePublishedAsMXBean() throws Exception {
+        ServiceMetrics metrics = Metrics.service("MetricsTestService");
+        metrics.onRequest();
+        metrics.onResponse(3_000_000, 100);
+        metrics.onRequest();
+        metrics.onError("ErrApiClient002");
+
+        assertSame(metrics, Metrics.service("MetricsTestService"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("me.gruzdeva:type=Service,name=\"MetricsTestService\"");
+        assertEquals(2L, server.getAttribute(name, "Requests"));
+        assertEquals(1L, server.getAttribute(name, "Errors"));
+        assertEquals(100L, server.getAttribute(name, "BytesFetched"));
+        CompositeData latency = (CompositeData) server.getAttribute(name, "FetchLatency");
+        assertEquals(1L, latency.get("count"));
+        assertEquals(3.0, (double) latency.get("maxMillis"), 0.001);
+    }
+
+    @Test
+    void writer_shouldBeReplacedAndRemoved() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("me.gruzdeva:type=Writer,name=\"metrics-test\"");
+        WriterMetrics first = Metrics.writer("metrics-test", () -> 1);
+        WriterMetrics second = Metrics.writer("metrics-test", () -> 2);
+
+        assertEquals(2, server.getAttribute(name, "Backlog"));
+        Metrics.remove(first);
+        assertTrue(server.isRegistered(name));
+        Metrics.remove(second);
+        assertFalse(server.isRegistered(name));
+        assertFalse(Metrics.getWriters().contains(second));
+    }
+}
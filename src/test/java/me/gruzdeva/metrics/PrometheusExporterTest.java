@@ -0,0 +1,98 @@
+package me.gruzdeva.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrometheusExporterTest {
+
+    @Test
+    void render_shouldWriteServiceCountersAndErrorCodes() {
+        ServiceMetrics metrics = Metrics.service("ExporterTestService");
+        metrics.onRequest();
+        metrics.onRequest();
+        metrics.onResponse(20_000_000, 512);
+        metrics.onError("ErrApiClient002");
+        metrics.countError("ErrPooler002");
+
+        PrometheusExporter exporter = new PrometheusExporter();
+        exporter.render();
+        String text = exporter.text();
+
+        assertTrue(text.contains("# TYPE apiscrapper_requests_total counter\n"));
+        assertTrue(text.contains("apiscrapper_requests_total{service=\"ExporterTestService\"} 2\n"));
+        assertTrue(text.contains("apiscrapper_request_errors_total{service=\"ExporterTestService\"} 1\n"));
+        assertTrue(text.contains(
+                "apiscrapper_errors_total{service=\"ExporterTestService\",code=\"ErrApiClient002\"} 1\n"));
+        assertTrue(text.contains(
+                "apiscrapper_errors_total{service=\"ExporterTestService\",code=\"ErrPooler002\"} 1\n"));
+        assertTrue(text.contains("apiscrapper_fetched_bytes_total{service=\"ExporterTestService\"} 512\n"));
+    }
+
+    @Test
+    void render_shouldWriteCumulativeHistogramBuckets() {
+        ServiceMetrics metrics = Metrics.service("ExporterHistogramService");
+        metrics.onResponse(3_000_000, 0);
+        metrics.onResponse(40_000_000, 0);
+        metrics.onResponse(40_000_000, 0);
+
+        PrometheusExporter exporter = new PrometheusExporter();
+        exporter.render();
+        String text = exporter.text();
+
+        String prefix = "apiscrapper_fetch_duration_seconds";
+        String labels = "{service=\"ExporterHistogramService\"";
+        assertTrue(text.contains(prefix + "_bucket" + labels + ",le=\"0.001\"} 0\n"));
+        assertTrue(text.contains(prefix + "_bucket" + labels + ",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains(prefix + "_bucket" + labels + ",le=\"0.025\"} 1\n"));
+        assertTrue(text.contains(prefix + "_bucket" + labels + ",le=\"0.05\"} 3\n"));
+        assertTrue(text.contains(prefix + "_bucket" + labels + ",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains(prefix + "_sum" + labels + "} 0.083\n"));
+        assertTrue(text.contains(prefix + "_count" + labels + "} 3\n"));
+    }
+
+    @Test
+    void render_shouldEscapeLabelValues() throws Exception {
+        Metrics.service("Quote\"Back\\slash\nN\u00e9");
+
+        PrometheusExporter exporter = new PrometheusExporter();
+        exporter.render();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.writeTo(out);
+
+        assertEquals(exporter.size(), out.size());
+        assertTrue(out.toString(StandardCharsets.UTF_8)
+                .contains("apiscrapper_requests_total{service=\"Quote\\\"Back\\\\slash\\nN\u00e9\"} 0\n"));
+    }
+
+    @Test
+    void render_again_shouldReplacePreviousText() {
+        Metrics.service("ExporterRepeatService").onRequest();
+        PrometheusExporter exporter = new PrometheusExporter();
+        exporter.render();
+        int size = exporter.size();
+
+        exporter.render();
+
+        assertEquals(size, exporter.size());
+    }
+
+    @Test
+    void render_shouldWriteParseHistogramSeparately() {
+        ServiceMetrics metrics = Metrics.service("ExporterParseService");
+        metrics.onParsed(2_000_000);
+        metrics.onProcessed(30_000_000);
+
+        PrometheusExporter exporter = new PrometheusExporter();
+        exporter.render();
+        String text = exporter.text();
+
+        assertTrue(text.contains("# TYPE apiscrapper_parse_duration_seconds histogram\n"));
+        assertTrue(text.contains("apiscrapper_parse_duration_seconds_sum{service=\"ExporterParseService\"} 0.002\n"));
+        assertTrue(text.contains("apiscrapper_process_duration_seconds_sum{service=\"ExporterParseService\"} 0.03\n"));
+        assertEquals(1, metrics.getParseLatency().getCount());
+    }
+}
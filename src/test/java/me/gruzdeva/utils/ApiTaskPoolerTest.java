@@ -1,10 +1,15 @@
 package me.gruzdeva.utils;
 
 import me.gruzdeva.api.ApiClient;
+import me.gruzdeva.api.ApiPayload;
+import me.gruzdeva.api.RateLimitedException;
+import me.gruzdeva.metrics.Metrics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,7 +39,7 @@ class ApiTaskPoolerTest {
     @Test
     void start_shouldBeginProcessingTasks() throws Exception {
         // Arrange
-        String testData = "{\"test\":\"data\"}";
+        ApiPayload testData = ApiPayload.of("TestService", "{\"test\":\"data\"}");
         when(mockApiClient.fetchData()).thenReturn(testData);
         when(mockApiClient.getServiceName()).thenReturn("TestService");
 
@@ -47,7 +52,7 @@ class ApiTaskPoolerTest {
 
         // Verify task execution occurred
         verify(mockApiClient, atLeastOnce()).fetchData();
-        verify(mockDataProcessor, atLeastOnce()).process(eq("TestService"), eq(testData));
+        verify(mockDataProcessor, atLeastOnce()).process(testData);
     }
 
     @Test
@@ -63,7 +68,7 @@ class ApiTaskPoolerTest {
 
         // Verify processor was never called with null data
         verify(mockApiClient, atLeastOnce()).fetchData();
-        verify(mockDataProcessor, never()).process(anyString(), isNull());
+        verify(mockDataProcessor, never()).process(any(ApiPayload.class));
     }
 
     @Test
@@ -77,7 +82,7 @@ class ApiTaskPoolerTest {
         Thread.sleep(TEST_TIMEOUT * 2);
 
         verify(mockApiClient, atLeastOnce()).fetchData();
-        verify(mockDataProcessor, never()).process(anyString(), anyString());
+        verify(mockDataProcessor, never()).process(any(ApiPayload.class));
     }
 
     @Test
@@ -85,7 +90,7 @@ class ApiTaskPoolerTest {
         CountDownLatch latch = new CountDownLatch(1);
         when(mockApiClient.fetchData()).thenAnswer(inv -> {
             latch.countDown(); // Signal first execution
-            return "data";
+            return ApiPayload.of("TestService", "data");
         });
         when(mockApiClient.getServiceName()).thenReturn("TestService");
 
@@ -113,8 +118,10 @@ class ApiTaskPoolerTest {
         // Arrange - create multiple clients
         ApiClient client1 = mock(ApiClient.class);
         ApiClient client2 = mock(ApiClient.class);
-        when(client1.fetchData()).thenReturn("data1");
-        when(client2.fetchData()).thenReturn("data2");
+        ApiPayload data1 = ApiPayload.of("Service1", "data1");
+        ApiPayload data2 = ApiPayload.of("Service2", "data2");
+        when(client1.fetchData()).thenReturn(data1);
+        when(client2.fetchData()).thenReturn(data2);
         when(client1.getServiceName()).thenReturn("Service1");
         when(client2.getServiceName()).thenReturn("Service2");
 
@@ -129,7 +136,134 @@ class ApiTaskPoolerTest {
         // Verify both clients were used
         verify(client1, atLeastOnce()).fetchData();
         verify(client2, atLeastOnce()).fetchData();
-        verify(mockDataProcessor, atLeastOnce()).process("Service1", "data1");
-        verify(mockDataProcessor, atLeastOnce()).process("Service2", "data2");
+        verify(mockDataProcessor, atLeastOnce()).process(data1);
+        verify(mockDataProcessor, atLeastOnce()).process(data2);
     }
-}
\ No newline at end of file
+
+    @Test
+    void waitingTasks_shouldNotOccupyWorkers() throws Exception {
+        ApiTaskPooler singleThreadPooler = new ApiTaskPooler(1);
+        ApiClient client1 = mock(ApiClient.class);
+        ApiClient client2 = mock(ApiClient.class);
+        ApiClient client3 = mock(ApiClient.class);
+        CountDownLatch latch = new CountDownLatch(3);
+        for (ApiClient client : new ApiClient[]{client1, client2, client3}) {
+            when(client.fetchData()).thenAnswer(inv -> {
+                latch.countDown();
+                return ApiPayload.of("Service", "data");
+            });
+            when(client.getServiceName()).thenReturn("Service");
+            // interval is much longer than the test, a sleeping worker would starve the other tasks
+            singleThreadPooler.addTask(client, TEST_TIMEOUT * 100, mockDataProcessor);
+        }
+
+        singleThreadPooler.start();
+
+        assertTrue(latch.await(TEST_TIMEOUT * 5, TimeUnit.MILLISECONDS));
+        singleThreadPooler.shutdown();
+
+        verify(client1, times(1)).fetchData();
+        verify(client2, times(1)).fetchData();
+        verify(client3, times(1)).fetchData();
+    }
+
+    @Test
+    void asyncMode_shouldProcessTasksWithoutBlockingWorkers() throws Exception {
+        ApiTaskPooler asyncPooler = new ApiTaskPooler(TEST_THREADS, ApiTaskPooler.Mode.ASYNC, 16);
+        ApiPayload testData = ApiPayload.of("TestService", "{\"test\":\"data\"}");
+        when(mockApiClient.fetchDataAsync(any(Executor.class))).thenReturn(CompletableFuture.completedFuture(testData));
+        when(mockApiClient.getServiceName()).thenReturn("TestService");
+
+        asyncPooler.addTask(mockApiClient, TEST_TIMEOUT, mockDataProcessor);
+        asyncPooler.start();
+
+        Thread.sleep(TEST_TIMEOUT * 2);
+        asyncPooler.shutdown();
+
+        verify(mockApiClient, atLeastOnce()).fetchDataAsync(any(Executor.class));
+        verify(mockApiClient, never()).fetchData();
+        verify(mockDataProcessor, atLeastOnce()).process(testData);
+    }
+
+    @Test
+    void asyncMode_shouldHandleFailedFetch() throws Exception {
+        ApiTaskPooler asyncPooler = new ApiTaskPooler(TEST_THREADS, ApiTaskPooler.Mode.ASYNC, 16);
+        when(mockApiClient.fetchDataAsync(any(Executor.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Test exception")));
+        when(mockApiClient.getServiceName()).thenReturn("TestService");
+
+        asyncPooler.addTask(mockApiClient, TEST_TIMEOUT, mockDataProcessor);
+        asyncPooler.start();
+
+        Thread.sleep(TEST_TIMEOUT * 3);
+        asyncPooler.shutdown();
+
+        // failed task is re-queued after its timeout
+        verify(mockApiClient, atLeast(2)).fetchDataAsync(any(Executor.class));
+        verify(mockDataProcessor, never()).process(any(ApiPayload.class));
+    }
+
+    @Test
+    void asyncMode_fetchThrowingWhenStarted_shouldRescheduleTask() throws Exception {
+        ApiTaskPooler asyncPooler = new ApiTaskPooler(TEST_THREADS, ApiTaskPooler.Mode.ASYNC, 1);
+        when(mockApiClient.fetchDataAsync(any(Executor.class))).thenThrow(new IllegalStateException("Test exception"));
+        when(mockApiClient.getServiceName()).thenReturn("TestService");
+
+        asyncPooler.addTask(mockApiClient, TEST_TIMEOUT, mockDataProcessor);
+        asyncPooler.start();
+
+        Thread.sleep(TEST_TIMEOUT * 3);
+        assertEquals(0, Metrics.getPooler().getInFlight());
+        asyncPooler.shutdown();
+
+        verify(mockApiClient, atLeast(2)).fetchDataAsync(any(Executor.class));
+    }
+
+    @Test
+    void rateLimitedFetch_shouldWaitForRetryAfter() throws Exception {
+        when(mockApiClient.fetchData()).thenThrow(new RateLimitedException("TestService", TEST_TIMEOUT * 10));
+        when(mockApiClient.getServiceName()).thenReturn("TestService");
+
+        taskPooler.addTask(mockApiClient, TEST_TIMEOUT, mockDataProcessor);
+        taskPooler.start();
+
+        Thread.sleep(TEST_TIMEOUT * 3);
+        taskPooler.shutdown();
+
+        // without Retry-After the task would have been polled again after TEST_TIMEOUT
+        verify(mockApiClient, times(1)).fetchData();
+    }
+
+    @Test
+    void failingService_shouldStopBeingCalledWhenBreakerOpens() throws Exception {
+        when(mockApiClient.fetchData()).thenThrow(new RuntimeException("Connection refused"));
+        when(mockApiClient.getServiceName()).thenReturn("TestService");
+
+        taskPooler.addTask(mockApiClient, TEST_TIMEOUT, mockDataProcessor);
+        taskPooler.start();
+
+        Thread.sleep(TEST_TIMEOUT * 10);
+        taskPooler.shutdown();
+
+        // breaker.failure_threshold failures, then no calls until breaker.open_ms has passed
+        verify(mockApiClient, times(5)).fetchData();
+    }
+
+    @Test
+    void virtualMode_shouldProcessTasks() throws Exception {
+        // falls back to platform threads on Java < 21, the behaviour must be the same
+        ApiTaskPooler virtualPooler = new ApiTaskPooler(TEST_THREADS, ApiTaskPooler.Mode.VIRTUAL, 16);
+        ApiPayload testData = ApiPayload.of("TestService", "data");
+        when(mockApiClient.fetchData()).thenReturn(testData);
+        when(mockApiClient.getServiceName()).thenReturn("TestService");
+
+        virtualPooler.addTask(mockApiClient, TEST_TIMEOUT, mockDataProcessor);
+        virtualPooler.start();
+
+        Thread.sleep(TEST_TIMEOUT * 3);
+        virtualPooler.shutdown();
+
+        verify(mockApiClient, atLeast(2)).fetchData();
+        verify(mockDataProcessor, atLeast(2)).process(testData);
+    }
+}
@@ -0,0 +1,153 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @EnumSource(AsyncWriter.FsyncPolicy.class)
+    void write_shouldAppendRecordsInOrder(AsyncWriter.FsyncPolicy policy) throws Exception {
+        Path file = tempDir.resolve("out.txt");
+        AsyncWriter writer = new AsyncWriter(new ChannelSink(file), 4, 3, policy, 10);
+
+        for (int i = 0; i < 20; i++) {
+            writer.write(("line" + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        writer.flush();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(20, lines.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("line" + i, lines.get(i));
+        }
+        writer.close();
+    }
+
+    @Test
+    void write_fromManyThreads_shouldKeepEveryRecordIntact() throws Exception {
+        Path file = tempDir.resolve("out.txt");
+        AsyncWriter writer = new AsyncWriter(new ChannelSink(file), 8, 64, AsyncWriter.FsyncPolicy.NEVER, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    writer.write(("t" + thread + "-" + i + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        writer.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2000, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.matches("t\\d-\\d+")));
+    }
+
+    @Test
+    void close_shouldWritePendingRecords() throws Exception {
+        Path file = tempDir.resolve("out.txt");
+        AsyncWriter writer = new AsyncWriter(new ChannelSink(file), 1024, 16, AsyncWriter.FsyncPolicy.INTERVAL, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            writer.write("x".getBytes(StandardCharsets.UTF_8));
+        }
+        writer.close();
+
+        assertEquals("x".repeat(100), Files.readString(file));
+    }
+
+    @Test
+    void write_afterClose_shouldThrowException() throws Exception {
+        AsyncWriter writer = new AsyncWriter(new ChannelSink(tempDir.resolve("out.txt")), 4, 4,
+                AsyncWriter.FsyncPolicy.NEVER, 0);
+        writer.close();
+
+        IOException exception = assertThrows(IOException.class, () -> writer.write(new byte[]{1}));
+        assertEquals("ErrWriter002", exception.getMessage());
+    }
+
+    @Test
+    void writeError_shouldBeThrownByLaterCalls() throws Exception {
+        AsyncWriter writer = new AsyncWriter(new FailingSink(new IOException("disk full")), 4, 4,
+                AsyncWriter.FsyncPolicy.NEVER, 0);
+
+        writer.write(new byte[]{1});
+        IOException exception = assertThrows(IOException.class, writer::flush);
+        assertEquals("ErrWriter001", exception.getMessage());
+        assertEquals("disk full", exception.getCause().getMessage());
+
+        assertThrows(IOException.class, () -> writer.write(new byte[]{2}));
+        assertThrows(IOException.class, writer::close);
+    }
+
+    @Test
+    void writerThreadDying_shouldNotBlockProducersOnFullQueue() throws Exception {
+        AsyncWriter writer = new AsyncWriter(new FailingSink(new IllegalStateException("bug")), 1, 1,
+                AsyncWriter.FsyncPolicy.NEVER, 0);
+
+        IOException exception = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 100; i++) {
+                writer.write(new byte[]{1});
+            }
+        }));
+        assertEquals("ErrWriter001", exception.getMessage());
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+    }
+
+    /**
+     * Fails every write with the given exception.
+     */
+    private static class FailingSink implements OutputSink {
+        private final Exception error;
+
+        FailingSink(Exception error) {
+            this.error = error;
+        }
+
+        @Override
+        public void write(byte[] record) throws IOException {
+            if (error instanceof IOException ioError) {
+                throw ioError;
+            }
+            throw (RuntimeException) error;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void force() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
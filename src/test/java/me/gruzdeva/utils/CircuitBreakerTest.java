@@ -0,0 +1,61 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    void onFailure_belowThreshold_shouldStayClosed() {
+        CircuitBreaker breaker = new CircuitBreaker("TestService", 3, 1000);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.tryAcquire());
+    }
+
+    @Test
+    void onFailure_atThreshold_shouldOpenAndRejectRequests() {
+        CircuitBreaker breaker = new CircuitBreaker("TestService", 2, 1000);
+
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        long wait = breaker.tryAcquire();
+        assertTrue(wait > 900 && wait <= 1000, "wait was " + wait);
+    }
+
+    @Test
+    void tryAcquire_afterOpenTime_shouldLetSingleProbeThrough() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("TestService", 1, 50);
+        breaker.onFailure();
+        Thread.sleep(60);
+
+        assertEquals(0, breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire() > 0);
+    }
+
+    @Test
+    void probeResult_shouldCloseOrReopen() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("TestService", 1, 50);
+        breaker.onFailure();
+        Thread.sleep(60);
+        breaker.tryAcquire();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(60);
+        breaker.tryAcquire();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.tryAcquire());
+    }
+}
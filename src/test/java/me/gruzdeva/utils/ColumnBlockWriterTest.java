@@ -0,0 +1,136 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnBlockWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeBlock_shouldEncodeColumnsByType() throws Exception {
+        Path file = tempDir.resolve("out.columnar");
+        try (ChannelSink sink = new ChannelSink(file)) {
+            ColumnBlockWriter writer = new ColumnBlockWriter("NYTimes", sink, 100);
+            writer.header(List.of("title", "section", "views", "score"));
+            writer.row(List.of("a", "U.S.", "10", "1.5"));
+            writer.row(List.of("b", "World", "-3", "2.0"));
+            writer.row(List.of("c", "U.S.", "7", "0.25"));
+            writer.row(List.of("d", "U.S.", "0", "100.0"));
+            writer.writeBlock();
+        }
+
+        try (ColumnarReader reader = new ColumnarReader(Files.newInputStream(file))) {
+            ColumnarReader.Block block = reader.next(null);
+            assertEquals("NYTimes", block.getServiceName());
+            assertEquals(4, block.getRowCount());
+
+            ColumnarReader.Column title = block.getColumn("title");
+            assertEquals(ColumnarReader.Type.STRING, title.getType());
+            assertEquals(List.of("a", "b", "c", "d"), title.getValues());
+            assertEquals("a", title.getMin());
+            assertEquals("d", title.getMax());
+
+            ColumnarReader.Column section = block.getColumn("section");
+            assertEquals(ColumnarReader.Type.DICTIONARY, section.getType());
+            assertEquals(List.of("U.S.", "World", "U.S.", "U.S."), section.getValues());
+
+            ColumnarReader.Column views = block.getColumn("views");
+            assertEquals(ColumnarReader.Type.LONG, views.getType());
+            assertEquals(List.of(10L, -3L, 7L, 0L), views.getValues());
+            assertEquals(-3L, views.getMin());
+            assertEquals(10L, views.getMax());
+
+            ColumnarReader.Column score = block.getColumn("score");
+            assertEquals(ColumnarReader.Type.DOUBLE, score.getType());
+            assertEquals(List.of(1.5, 2.0, 0.25, 100.0), score.getValues());
+            assertEquals(100.0, score.getMax());
+
+            assertNull(reader.next(null));
+        }
+    }
+
+    @Test
+    void writeBlock_withNumbersNotPrintedBack_shouldKeepStrings() throws Exception {
+        Path file = tempDir.resolve("out.columnar");
+        try (ChannelSink sink = new ChannelSink(file)) {
+            ColumnBlockWriter writer = new ColumnBlockWriter("Ids", sink, 100);
+            writer.header(List.of("id", "mixed", "precise", "price", "zero", "exponent"));
+            writer.row(List.of("12345678901234567890", "9007199254740993", "0.1000000000000000055", "0.10", "-0", "1e2"));
+            writer.row(List.of("1", "1.5", "0.5", "2.5", "1", "1.5"));
+            writer.writeBlock();
+        }
+
+        try (ColumnarReader reader = new ColumnarReader(Files.newInputStream(file))) {
+            ColumnarReader.Block block = reader.next(null);
+
+            assertEquals(ColumnarReader.Type.STRING, block.getColumn("id").getType());
+            assertEquals(List.of("12345678901234567890", "1"), block.getColumn("id").getValues());
+            assertEquals(ColumnarReader.Type.STRING, block.getColumn("mixed").getType());
+            assertEquals(List.of("9007199254740993", "1.5"), block.getColumn("mixed").getValues());
+            assertEquals(ColumnarReader.Type.STRING, block.getColumn("precise").getType());
+            // same number as the double 0.1, but the text would change
+            assertEquals(List.of("0.10", "2.5"), block.getColumn("price").getValues());
+            assertEquals(List.of("-0", "1"), block.getColumn("zero").getValues());
+            assertEquals(List.of("1e2", "1.5"), block.getColumn("exponent").getValues());
+        }
+    }
+
+    @Test
+    void next_withSelectedColumns_shouldSkipOthers() throws Exception {
+        Path file = tempDir.resolve("out.columnar");
+        try (ChannelSink sink = new ChannelSink(file)) {
+            ColumnBlockWriter writer = new ColumnBlockWriter("Weather", sink, 2);
+            writer.header(List.of("city", "temp"));
+            writer.row(List.of("Paris", "20"));
+            writer.row(List.of("Paris", "22"));
+            writer.row(List.of("Rome", "30"));
+            writer.writeBlock();
+        }
+
+        try (InputStream in = Files.newInputStream(file); ColumnarReader reader = new ColumnarReader(in)) {
+            ColumnarReader.Block first = reader.next(Set.of("temp"));
+            assertEquals(2, first.getRowCount());
+            assertNull(first.getColumn("city").getValues());
+            assertEquals("Paris", first.getColumn("city").getMin());
+            assertEquals(List.of(20L, 22L), first.getColumn("temp").getValues());
+
+            ColumnarReader.Block second = reader.next(Set.of("city"));
+            assertEquals(List.of("Rome"), second.getColumn("city").getValues());
+            assertNull(second.getColumn("temp").getValues());
+            assertNull(reader.next(null));
+        }
+    }
+
+    @Test
+    void header_withDifferentColumns_shouldStartNewBlock() throws Exception {
+        Path file = tempDir.resolve("out.columnar");
+        try (ChannelSink sink = new ChannelSink(file)) {
+            ColumnBlockWriter writer = new ColumnBlockWriter("CatFacts", sink, 100);
+            writer.header(List.of("fact", "length"));
+            writer.row(List.of("f1", "2"));
+            writer.header(List.of("fact", "length"));
+            writer.row(List.of("f2", "2"));
+            writer.header(List.of("fact"));
+            writer.row(List.of("f3"));
+            writer.writeBlock();
+        }
+
+        try (ColumnarReader reader = new ColumnarReader(Files.newInputStream(file))) {
+            ColumnarReader.Block first = reader.next(null);
+            assertEquals(List.of("f1", "f2"), first.getColumn("fact").getValues());
+            ColumnarReader.Block second = reader.next(null);
+            assertEquals(1, second.getColumns().size());
+            assertEquals(List.of("f3"), second.getColumn("fact").getValues());
+        }
+    }
+}
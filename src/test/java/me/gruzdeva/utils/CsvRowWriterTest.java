@@ -0,0 +1,147 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRowWriterTest {
+    private final static String NL = System.lineSeparator();
+
+    @Test
+    void row_shouldQuoteOnlyFieldsThatNeedIt() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        CsvRowWriter writer = new CsvRowWriter(sink, 1024);
+
+        writer.header(writer.encodeLine(List.of("a", "b")));
+        writer.row(List.of("plain", "with, comma"));
+        writer.row(List.of("say \"hi\"", "two\nlines"));
+        writer.row(List.of("", "\""));
+        writer.flush();
+
+        assertEquals("a,b" + NL
+                + "plain,\"with, comma\"" + NL
+                + "\"say \"\"hi\"\"\",\"two\nlines\"" + NL
+                + ",\"\"\"\"" + NL, sink.text());
+    }
+
+    @Test
+    void row_shouldEncodeUtf8() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        CsvRowWriter writer = new CsvRowWriter(sink, 1024);
+        String value = "caf\u00e9 \u20ac \ud83d\ude00, ok";
+
+        writer.row(List.of(value, "lone \ud83d"));
+        writer.flush();
+
+        assertEquals("\"" + value + "\",lone ?" + NL, sink.text());
+    }
+
+    @Test
+    void row_shouldAcceptReusedBuilders() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        CsvRowWriter writer = new CsvRowWriter(sink, 1024);
+        StringBuilder value = new StringBuilder();
+
+        for (int i = 0; i < 3; i++) {
+            value.setLength(0);
+            value.append("row").append(i);
+            writer.row(List.of(value));
+        }
+        writer.flush();
+
+        assertEquals("row0" + NL + "row1" + NL + "row2" + NL, sink.text());
+    }
+
+    @Test
+    void row_shouldEmitChunksAtRowBoundaries() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        CsvRowWriter writer = new CsvRowWriter(sink, 16);
+
+        for (int i = 0; i < 10; i++) {
+            writer.row(List.of("value" + i, "x".repeat(i)));
+        }
+        assertFalse(sink.records.isEmpty());
+        writer.flush();
+
+        for (byte[] record : sink.records) {
+            assertTrue(new String(record, StandardCharsets.UTF_8).endsWith(NL));
+        }
+        assertEquals(10, sink.text().split(NL).length);
+    }
+
+    @Test
+    void row_longerThanBuffer_shouldBeWrittenWhole() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        CsvRowWriter writer = new CsvRowWriter(sink, 16);
+        String longValue = "\"".repeat(5000);
+
+        writer.row(List.of(longValue));
+        writer.row(List.of("next"));
+        writer.flush();
+
+        assertEquals("\"" + "\"\"".repeat(5000) + "\"" + NL + "next" + NL, sink.text());
+    }
+
+    @Test
+    void header_shouldBeWrittenOnlyWhenItsContentChanges() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        CsvRowWriter writer = new CsvRowWriter(sink, 1024);
+        byte[] first = writer.encodeLine(List.of("a"));
+        byte[] second = writer.encodeLine(List.of("a", "b"));
+
+        writer.header(first);
+        writer.row(List.of("1"));
+        writer.header(writer.encodeLine(List.of("a")));
+        writer.row(List.of("2"));
+        writer.header(second);
+        writer.row(List.of("3", "4"));
+        writer.flush();
+
+        assertEquals("a" + NL + "1" + NL + "2" + NL + "a,b" + NL + "3,4" + NL, sink.text());
+        // the header is a record of its own
+        assertSame(first, sink.records.get(0));
+        assertSame(second, sink.records.get(2));
+    }
+
+    @Test
+    void flush_withoutRows_shouldWriteNothing() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        CsvRowWriter writer = new CsvRowWriter(sink, 1024);
+
+        writer.flush();
+
+        assertTrue(sink.records.isEmpty());
+    }
+
+    private static class CollectingSink implements OutputSink {
+        private final List<byte[]> records = new ArrayList<>();
+
+        @Override
+        public void write(byte[] record) {
+            records.add(record);
+        }
+
+        String text() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            records.forEach(out::writeBytes);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void force() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
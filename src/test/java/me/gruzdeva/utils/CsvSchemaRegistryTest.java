@@ -0,0 +1,99 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvSchemaRegistryTest {
+    private final static String NL = System.lineSeparator();
+
+    private final CsvSchemaRegistry registry = new CsvSchemaRegistry();
+    private final CollectingSink sink = new CollectingSink();
+    private final CsvRowWriter writer = new CsvRowWriter(sink, 1024);
+
+    @SafeVarargs
+    private void write(String serviceName, List<String> columns, List<String>... rows) throws Exception {
+        RowHandler handler = registry.handler(serviceName, writer);
+        handler.header(columns);
+        for (List<String> row : rows) {
+            handler.row(row);
+        }
+        writer.flush();
+    }
+
+    @Test
+    void handler_shouldWriteHeaderOnceAndKeepColumnOrder() throws Exception {
+        write("Service", List.of("a", "b"), List.of("1", "2"));
+        write("Service", List.of("b", "a"), List.of("4", "3"));
+        write("Service", List.of("a"), List.of("5"));
+
+        assertEquals("a,b" + NL + "1,2" + NL + "3,4" + NL + "5," + NL, sink.text());
+        assertEquals(List.of("a", "b"), registry.getColumns("Service"));
+    }
+
+    @Test
+    void handler_withNewColumns_shouldStartNewSegment() throws Exception {
+        write("Service", List.of("a", "b"), List.of("1", "2"));
+        write("Service", List.of("c", "a"), List.of("3", "4"));
+        write("Service", List.of("a", "b"), List.of("5", "6"));
+
+        assertEquals("a,b" + NL + "1,2" + NL + "a,b,c" + NL + "4,,3" + NL + "5,6," + NL, sink.text());
+        assertEquals(List.of("a", "b", "c"), registry.getColumns("Service"));
+    }
+
+    @Test
+    void isHeader_shouldRecognizeOnlyHeaderRecords() throws Exception {
+        write("Service", List.of("a"), List.of("1"));
+
+        assertTrue(registry.isHeader("Service", sink.records.get(0)));
+        assertFalse(registry.isHeader("Service", sink.records.get(1)));
+        assertFalse(registry.isHeader("Service", ("b" + NL).getBytes(StandardCharsets.UTF_8)));
+        assertFalse(registry.isHeader("Other", sink.records.get(0)));
+    }
+
+    @Test
+    void isHeader_shouldCompareByContentAndKnowEarlierHeaders() throws Exception {
+        write("Service", List.of("a"), List.of("1"));
+        write("Service", List.of("a", "b"), List.of("2", "3"));
+
+        assertTrue(registry.isHeader("Service", ("a" + NL).getBytes(StandardCharsets.UTF_8)));
+        assertTrue(registry.isHeader("Service", ("a,b" + NL).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void getColumns_forUnknownService_shouldBeEmpty() {
+        assertEquals(List.of(), registry.getColumns("Unknown"));
+    }
+
+    private static class CollectingSink implements OutputSink {
+        private final List<byte[]> records = new ArrayList<>();
+
+        @Override
+        public void write(byte[] record) {
+            records.add(record);
+        }
+
+        String text() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            records.forEach(out::writeBytes);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void force() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package me.gruzdeva.utils;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import me.gruzdeva.api.ApiPayload;
+import me.gruzdeva.metrics.Metrics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -21,7 +29,6 @@ class DataProcessorTest {
     private DataProcessor jsonProcessor;
     private DataProcessor csvProcessor;
     private Path jsonOutputPath;
-    private Path csvOutputPath;
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
     @BeforeEach
@@ -31,14 +38,14 @@ class DataProcessorTest {
         csvProcessor = new DataProcessor("csv", tempDirPath);
 
         jsonOutputPath = tempDir.resolve("output.json");
-        csvOutputPath = tempDir.resolve("output.csv");
     }
 
     @AfterEach
     void tearDown() {
         try {
+            jsonProcessor.close();
+            csvProcessor.close();
             Files.deleteIfExists(jsonOutputPath);
-            Files.deleteIfExists(csvOutputPath);
         } catch (IOException e) {
             // Log or handle exception
         }
@@ -50,6 +57,7 @@ class DataProcessorTest {
         String jsonData = "{\"name\":\"John\",\"age\":30}";
 
         jsonProcessor.process(serviceName, jsonData);
+        jsonProcessor.flush();
 
         assertTrue(Files.exists(jsonOutputPath));
         String fileContent = Files.readString(jsonOutputPath);
@@ -58,15 +66,31 @@ class DataProcessorTest {
         assertTrue(fileContent.contains("\"age\" : 30"));
     }
 
+    @Test
+    void process_withPayload_shouldReuseParsedTree() throws Exception {
+        ApiPayload payload = ApiPayload.of("TestService", "{\"name\":\"John\",\"age\":30}");
+        var tree = payload.getTree();
+
+        jsonProcessor.process(payload);
+        jsonProcessor.flush();
+        csvProcessor.process(payload);
+        csvProcessor.flush();
+
+        assertSame(tree, payload.getTree());
+        assertTrue(Files.readString(jsonOutputPath).contains("\"name\" : \"John\""));
+        assertEquals(List.of("name,age", "John,30"), Files.readAllLines(csvOutputPath("TestService")));
+    }
+
     @Test
     void process_withCsvFormat_shouldWriteCsvToFile() throws Exception {
         String serviceName = "TestService";
         String jsonData = "{\"name\":\"John\",\"age\":30}";
 
         csvProcessor.process(serviceName, jsonData);
+        csvProcessor.flush();
 
-        assertTrue(Files.exists(csvOutputPath));
-        List<String> lines = Files.readAllLines(csvOutputPath);
+        assertTrue(Files.exists(csvOutputPath(serviceName)));
+        List<String> lines = Files.readAllLines(csvOutputPath(serviceName));
         assertEquals(2, lines.size());
         assertEquals("name,age", lines.get(0));
         assertEquals("John,30", lines.get(1));
@@ -78,23 +102,76 @@ class DataProcessorTest {
         String jsonData = "{\"results\":[{\"title\":\"Test Article\",\"abstract\":\"Test content\",\"url\":\"http://test.com\",\"published_date\":\"2023-01-01\",\"byline\":\"By Test Author\",\"section\":\"test\"}]}";
 
         csvProcessor.process(serviceName, jsonData);
+        csvProcessor.flush();
 
-        assertTrue(Files.exists(csvOutputPath));
-        List<String> lines = Files.readAllLines(csvOutputPath);
+        assertTrue(Files.exists(csvOutputPath(serviceName)));
+        List<String> lines = Files.readAllLines(csvOutputPath(serviceName));
         assertEquals(2, lines.size());
         assertTrue(lines.get(0).contains("title,abstract,url,published_date,byline,section"));
         assertTrue(lines.get(1).contains("Test Article,Test content,http://test.com,2023-01-01,By Test Author,test"));
     }
 
+    @Test
+    void process_withNYTimesFieldsInAnyOrder_shouldFollowProjection() throws Exception {
+        String jsonData = "{\"status\":\"OK\",\"results\":[" +
+                "{\"section\":\"s1\",\"media\":[{\"type\":\"image\"}],\"title\":\"A, B\",\"url\":\"u1\"}," +
+                "{\"title\":\"C\",\"byline\":null}]}";
+
+        csvProcessor.process("NYTimes", jsonData);
+        csvProcessor.flush();
+
+        List<String> lines = Files.readAllLines(csvOutputPath("NYTimes"));
+        assertEquals(3, lines.size());
+        assertEquals("title,abstract,url,published_date,byline,section", lines.get(0));
+        assertEquals("\"A, B\",,u1,,,s1", lines.get(1));
+        assertEquals("C,,,,null,", lines.get(2));
+    }
+
+    @Test
+    void process_withNYTimesChanges_shouldWriteChangeColumns() throws Exception {
+        String changes = "{\"period\":1,\"changes\":[{\"title\":\"A\",\"url\":\"u1\",\"change\":\"rank\","
+                + "\"rank\":1,\"previous_rank\":2},{\"id\":3,\"url\":\"u3\",\"change\":\"removed\",\"previous_rank\":3}]}";
+
+        csvProcessor.process("NYTimes", changes);
+        csvProcessor.flush();
+
+        assertEquals(List.of("change,rank,previous_rank,title,abstract,url,published_date,byline,section",
+                        "rank,1,2,A,,u1,,,", "removed,,3,,,u3,,,"),
+                Files.readAllLines(csvOutputPath("NYTimes")));
+    }
+
+    @Test
+    void process_withNYTimesDataWithoutResults_shouldFallBackToObject() throws Exception {
+        String jsonData = "{\"fault\":\"Invalid ApiKey\",\"results\":[]}";
+
+        csvProcessor.process("NYTimes", jsonData);
+        csvProcessor.flush();
+
+        List<String> lines = Files.readAllLines(csvOutputPath("NYTimes"));
+        assertEquals(List.of("fault,results", "Invalid ApiKey,[]"), lines);
+    }
+
+    @Test
+    void process_withJsonArray_shouldMapItemsOntoFirstItemColumns() throws Exception {
+        String jsonData = "[{\"id\":1,\"name\":\"Item 1\"},{\"name\":\"Item 2\",\"extra\":true,\"id\":2},{\"other\":3}]";
+
+        csvProcessor.process("ArrayService", jsonData);
+        csvProcessor.flush();
+
+        List<String> lines = Files.readAllLines(csvOutputPath("ArrayService"));
+        assertEquals(List.of("id,name", "1,Item 1", "2,Item 2", ","), lines);
+    }
+
     @Test
     void process_withJsonArray_shouldWriteAsCsvRows() throws Exception {
         String serviceName = "ArrayService";
         String jsonData = "[{\"id\":1,\"name\":\"Item 1\"},{\"id\":2,\"name\":\"Item 2\"}]";
 
         csvProcessor.process(serviceName, jsonData);
+        csvProcessor.flush();
 
-        assertTrue(Files.exists(csvOutputPath));
-        List<String> lines = Files.readAllLines(csvOutputPath);
+        assertTrue(Files.exists(csvOutputPath(serviceName)));
+        List<String> lines = Files.readAllLines(csvOutputPath(serviceName));
         assertEquals(3, lines.size());
         assertEquals("id,name", lines.get(0));
         assertEquals("1,Item 1", lines.get(1));
@@ -107,9 +184,10 @@ class DataProcessorTest {
         String jsonData = "{\"user\":{\"name\":\"John\",\"details\":{\"age\":30}},\"active\":true}";
 
         csvProcessor.process(serviceName, jsonData);
+        csvProcessor.flush();
 
-        assertTrue(Files.exists(csvOutputPath));
-        List<String> lines = Files.readAllLines(csvOutputPath);
+        assertTrue(Files.exists(csvOutputPath(serviceName)));
+        List<String> lines = Files.readAllLines(csvOutputPath(serviceName));
         assertEquals(2, lines.size());
         assertTrue(lines.get(0).contains("user,active"));
 
@@ -120,15 +198,27 @@ class DataProcessorTest {
         assertTrue(dataLine.endsWith("true"));
     }
 
+    @Test
+    void process_withCsvFormat_shouldKeepNumberTextAlsoInNestedValues() throws Exception {
+        String jsonData = "{\"zero\":-0,\"price\":1.50,\"nested\":{\"zero\":-0,\"prices\":[1.50,1e2]}}";
+
+        csvProcessor.process("NumberService", jsonData);
+        csvProcessor.flush();
+
+        assertEquals(List.of("zero,price,nested", "-0,1.50,\"{\"\"zero\"\":-0,\"\"prices\"\":[1.50,1e2]}\""),
+                Files.readAllLines(csvOutputPath("NumberService")));
+    }
+
     @Test
     void process_withCommasInData_shouldEscapeFields() throws Exception {
         String serviceName = "CommaService";
         String jsonData = "{\"description\":\"This, has, commas\",\"normal\":\"value\"}";
 
         csvProcessor.process(serviceName, jsonData);
+        csvProcessor.flush();
 
-        assertTrue(Files.exists(csvOutputPath));
-        List<String> lines = Files.readAllLines(csvOutputPath);
+        assertTrue(Files.exists(csvOutputPath(serviceName)));
+        List<String> lines = Files.readAllLines(csvOutputPath(serviceName));
         assertEquals(2, lines.size());
         assertTrue(lines.get(0).contains("description,normal"));
         assertTrue(lines.get(1).contains("\"This, has, commas\",value"));
@@ -140,6 +230,7 @@ class DataProcessorTest {
         String emptyData = "";
 
         jsonProcessor.process(serviceName, emptyData);
+        jsonProcessor.flush();
 
         // No file should be created or it should be empty
         if (Files.exists(jsonOutputPath)) {
@@ -165,6 +256,7 @@ class DataProcessorTest {
         String serviceName = "NullService";
 
         jsonProcessor.process(serviceName, null);
+        jsonProcessor.flush();
 
         // No file should be created or it should be empty
         if (Files.exists(jsonOutputPath)) {
@@ -172,4 +264,140 @@ class DataProcessorTest {
             assertEquals("", fileContent);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void process_withNotModifiedPayload_shouldWriteNothing() throws Exception {
+        jsonProcessor.process(ApiPayload.notModified("TestService", Instant.now(), 5));
+        jsonProcessor.flush();
+
+        assertEquals("", Files.readString(jsonOutputPath));
+    }
+
+    @Test
+    void process_withShardedLayout_shouldWriteOneFilePerService() throws Exception {
+        DataProcessor shardedProcessor = new DataProcessor("csv", tempDir.toString(), DataProcessor.Layout.SHARDED);
+
+        shardedProcessor.process("CatFacts", "{\"fact\":\"f1\",\"length\":2}");
+        shardedProcessor.process("Weather", "{\"city\":\"Paris\"}");
+        shardedProcessor.process("CatFacts", "{\"fact\":\"f2\",\"length\":2}");
+        shardedProcessor.close();
+
+        assertEquals(List.of("fact,length", "f1,2", "f2,2"),
+                Files.readAllLines(csvOutputPath("CatFacts")));
+        assertEquals(List.of("city", "Paris"), Files.readAllLines(csvOutputPath("Weather")));
+        assertFalse(Files.exists(tempDir.resolve("output.csv")));
+    }
+
+    @Test
+    void process_withCsvFormat_shouldStartNewFileWhenColumnsChange() throws Exception {
+        csvProcessor.process("CatFacts", "{\"fact\":\"f1\",\"length\":2}");
+        csvProcessor.process("CatFacts", "{\"length\":3,\"fact\":\"f2\"}");
+        csvProcessor.process("Weather", "{\"city\":\"Paris\"}");
+        csvProcessor.process("CatFacts", "{\"fact\":\"f3\",\"source\":\"s\"}");
+        csvProcessor.process("CatFacts", "{\"fact\":\"f4\",\"length\":4}");
+        csvProcessor.flush();
+
+        assertEquals(List.of("fact,length", "f1,2", "f2,3"), Files.readAllLines(csvOutputPath("CatFacts")));
+        assertEquals(List.of("fact,length,source", "f3,,s", "f4,4,"),
+                Files.readAllLines(tempDir.resolve("output-CatFacts.00002.csv")));
+        assertEquals(List.of("city", "Paris"), Files.readAllLines(csvOutputPath("Weather")));
+        assertFalse(Files.exists(tempDir.resolve("output.csv")));
+    }
+
+    @Test
+    void close_withShardedMergedLayout_shouldConcatenateShards() throws Exception {
+        DataProcessor shardedProcessor = new DataProcessor("json", tempDir.toString(), DataProcessor.Layout.SHARDED_MERGED);
+
+        shardedProcessor.process("Weather", "{\"city\":\"Paris\"}");
+        shardedProcessor.process("CatFacts", "{\"fact\":\"f1\"}");
+        shardedProcessor.close();
+
+        String catFacts = Files.readString(tempDir.resolve("output-CatFacts.json"));
+        String weather = Files.readString(tempDir.resolve("output-Weather.json"));
+        assertEquals(catFacts + weather, Files.readString(jsonOutputPath));
+    }
+
+    @Test
+    void close_withShardedMergedLayoutAndCsv_shouldConcatenateAllFiles() throws Exception {
+        DataProcessor shardedProcessor = new DataProcessor("csv", tempDir.toString(), DataProcessor.Layout.SHARDED_MERGED);
+
+        shardedProcessor.process("Weather", "{\"city\":\"Paris\"}");
+        shardedProcessor.process("CatFacts", "{\"fact\":\"f1\"}");
+        shardedProcessor.process("CatFacts", "{\"fact\":\"f2\",\"length\":2}");
+        shardedProcessor.close();
+
+        assertEquals(List.of("fact", "f1", "fact,length", "f2,2", "city", "Paris"),
+                Files.readAllLines(tempDir.resolve("output.csv")));
+    }
+
+    @Test
+    void process_shouldRecordParseLatency() throws Exception {
+        csvProcessor.process("ParseMetricsCsv", "{\"a\":1}");
+        jsonProcessor.process("ParseMetricsJson", "{\"a\":1}");
+
+        assertEquals(1, Metrics.service("ParseMetricsCsv").getParseLatency().getCount());
+        assertEquals(1, Metrics.service("ParseMetricsJson").getParseLatency().getCount());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"{\"fact\":\"cut", "<html>\n<body>Bad Gateway</body>\n</html>", "{\"a\":1}\n{\"b\":2}", "\"a\nb\""})
+    void process_withNdjsonFormatAndInvalidJson_shouldNotWriteLine(String body) throws Exception {
+        DataProcessor ndjsonProcessor = new DataProcessor("ndjson", tempDir.toString());
+
+        assertThrows(Exception.class, () -> ndjsonProcessor.process("CatFacts", body));
+        ndjsonProcessor.process("CatFacts", "{\"fact\":\"ok\"}");
+        ndjsonProcessor.close();
+
+        List<String> lines = Files.readAllLines(tempDir.resolve("output.ndjson"));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("\"data\":{\"fact\":\"ok\"}}"));
+    }
+
+    @Test
+    void process_withNdjsonFormat_shouldWriteOneCompactLinePerResponse() throws Exception {
+        DataProcessor ndjsonProcessor = new DataProcessor("ndjson", tempDir.toString());
+        Instant fetchedAt = Instant.parse("2024-05-01T10:15:30Z");
+        byte[] body = "{\n  \"fact\" : \"a\\nb\",\r\n  \"length\" : 3\n}".getBytes(StandardCharsets.UTF_8);
+
+        ndjsonProcessor.process(new ApiPayload("CatFacts", fetchedAt, 42, body));
+        ndjsonProcessor.process(new ApiPayload("Weather", fetchedAt, 7, "[1,2]".getBytes(StandardCharsets.UTF_8)));
+        ndjsonProcessor.close();
+
+        List<String> lines = Files.readAllLines(tempDir.resolve("output.ndjson"));
+        assertEquals(2, lines.size());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertEquals("CatFacts", first.get("service").asText());
+        assertEquals("2024-05-01T10:15:30Z", first.get("fetched_at").asText());
+        assertEquals(42, first.get("latency_ms").asLong());
+        assertEquals("a\nb", first.get("data").get("fact").asText());
+        assertEquals(3, first.get("data").get("length").asInt());
+        assertEquals(2, objectMapper.readTree(lines.get(1)).get("data").size());
+    }
+
+    @Test
+    void process_withColumnarFormat_shouldWriteBlocksPerService() throws Exception {
+        DataProcessor columnarProcessor = new DataProcessor("columnar", tempDir.toString());
+
+        columnarProcessor.process("CatFacts", "{\"fact\":\"f1\",\"length\":2}");
+        columnarProcessor.process("Weather", "{\"city\":\"Paris\"}");
+        columnarProcessor.process("CatFacts", "{\"fact\":\"f2\",\"length\":5}");
+        columnarProcessor.close();
+
+        try (ColumnarReader reader = new ColumnarReader(Files.newInputStream(tempDir.resolve("output.columnar")))) {
+            List<ColumnarReader.Block> blocks = new ArrayList<>();
+            for (ColumnarReader.Block block = reader.next(null); block != null; block = reader.next(null)) {
+                blocks.add(block);
+            }
+            assertEquals(2, blocks.size());
+            ColumnarReader.Block catFacts = blocks.stream()
+                    .filter(block -> block.getServiceName().equals("CatFacts")).findFirst().orElseThrow();
+            assertEquals(List.of("f1", "f2"), catFacts.getColumn("fact").getValues());
+            assertEquals(List.of(2L, 5L), catFacts.getColumn("length").getValues());
+        }
+    }
+
+    private Path csvOutputPath(String serviceName) {
+        // the first segment, a change of the columns starts the next one
+        return tempDir.resolve("output-" + serviceName + ".00001.csv");
+    }
+}
@@ -0,0 +1,53 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void force_shouldMakeWrittenRecordsReadableBeforeClose() throws Exception {
+        Path file = tempDir.resolve("output.json.gz");
+        GzipSink sink = new GzipSink(file);
+        try {
+            sink.write("first\n".getBytes(StandardCharsets.UTF_8));
+            sink.write("second\n".getBytes(StandardCharsets.UTF_8));
+            sink.force();
+
+            assertEquals("first\nsecond\n", readUntilEnd(file));
+        } finally {
+            sink.close();
+        }
+        assertEquals("first\nsecond\n", readUntilEnd(file));
+    }
+
+    /**
+     * Decompresses as much as the file holds, a stream without its trailer ends with an EOFException.
+     */
+    private static String readUntilEnd(Path file) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (EOFException e) {
+            // not closed yet
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void write_acrossSeveralMappings_shouldTruncateToRealLengthOnClose() throws Exception {
+        Path file = tempDir.resolve("out.txt");
+        MappedSink sink = new MappedSink(file, 16);
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 50; i++) {
+            String record = "record-" + i + "\n";
+            sink.write(record.getBytes(StandardCharsets.UTF_8));
+            expected.append(record);
+        }
+        // larger than a whole chunk
+        String large = "x".repeat(100);
+        sink.write(large.getBytes(StandardCharsets.UTF_8));
+        expected.append(large);
+
+        assertEquals(expected.length(), sink.length());
+        sink.close();
+
+        assertEquals(expected.toString(), Files.readString(file));
+    }
+
+    @Test
+    void force_afterWritingAcrossChunkBoundary_shouldCoverEarlierMappings() throws Exception {
+        Path file = tempDir.resolve("out.txt");
+        MappedSink sink = new MappedSink(file, 16);
+        try {
+            sink.write("0123456789\n".getBytes(StandardCharsets.UTF_8));
+            // does not fit the first mapping, which is forced before it is replaced
+            sink.write("abcdefghij\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals(11, sink.forcedLength());
+
+            sink.force();
+
+            assertEquals(22, sink.forcedLength());
+            assertEquals("0123456789\nabcdefghij\n",
+                    new String(Files.readAllBytes(file), 0, 22, StandardCharsets.UTF_8));
+        } finally {
+            sink.close();
+        }
+    }
+
+    @Test
+    void open_existingFile_shouldAppend() throws Exception {
+        Path file = tempDir.resolve("out.txt");
+        Files.writeString(file, "existing\n");
+
+        MappedSink sink = new MappedSink(file, 1024);
+        sink.write("appended\n".getBytes(StandardCharsets.UTF_8));
+        sink.close();
+
+        assertEquals("existing\nappended\n", Files.readString(file));
+    }
+}
@@ -0,0 +1,87 @@
+package me.gruzdeva.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.gruzdeva.api.ApiPayload;
+import me.gruzdeva.metrics.Metrics;
+import me.gruzdeva.metrics.ServiceMetrics;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordDeduplicatorTest {
+
+    private final RecordDeduplicator deduplicator = new RecordDeduplicator(new ObjectMapper(), 100);
+
+    /**
+     * Checks the payload like DataProcessor does and remembers it as written if it is new.
+     */
+    private static boolean isDuplicate(RecordDeduplicator deduplicator, ApiPayload payload) {
+        long hash = deduplicator.contentHash(payload);
+        if (deduplicator.isDuplicate(payload, hash)) {
+            return true;
+        }
+        deduplicator.remember(payload, hash);
+        return false;
+    }
+
+    @Test
+    void isDuplicate_withSameContent_shouldIgnoreKeyOrderAndWhitespace() {
+        assertFalse(isDuplicate(deduplicator, ApiPayload.of("CatFacts", "{\"fact\":\"f1\",\"length\":2}")));
+        assertTrue(isDuplicate(deduplicator, ApiPayload.of("CatFacts", "{ \"length\" : 2, \"fact\" : \"f1\" }")));
+        assertFalse(isDuplicate(deduplicator, ApiPayload.of("CatFacts", "{\"fact\":\"f2\",\"length\":2}")));
+
+        assertEquals(3, deduplicator.getCheckedCount());
+        assertEquals(1, deduplicator.getDroppedCount());
+    }
+
+    @Test
+    void isDuplicate_shouldBePerService() {
+        assertFalse(isDuplicate(deduplicator, ApiPayload.of("CatFacts", "{\"a\":1}")));
+        assertFalse(isDuplicate(deduplicator, ApiPayload.of("Weather", "{\"a\":1}")));
+        assertTrue(isDuplicate(deduplicator, ApiPayload.of("Weather", "{\"a\":1}")));
+    }
+
+    @Test
+    void isDuplicate_withInvalidJson_shouldCompareRawContent() {
+        assertFalse(isDuplicate(deduplicator, ApiPayload.of("CatFacts", "not json")));
+        assertTrue(isDuplicate(deduplicator, ApiPayload.of("CatFacts", "not json")));
+    }
+
+    @Test
+    void isDuplicate_beyondCapacity_shouldForgetOldestAndNeverDropNewRecords() {
+        RecordDeduplicator small = new RecordDeduplicator(new ObjectMapper(), 10);
+
+        // many more records than the filter is sized for, none of them may be dropped
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(isDuplicate(small, ApiPayload.of("CatFacts", "{\"n\":" + i + "}")));
+        }
+        // the most recent ones are still remembered, the first one is not
+        assertTrue(isDuplicate(small, ApiPayload.of("CatFacts", "{\"n\":999}")));
+        assertFalse(isDuplicate(small, ApiPayload.of("CatFacts", "{\"n\":0}")));
+    }
+
+    @Test
+    void isDuplicate_ofRecordThatWasNotWritten_shouldNotDropIt() {
+        ApiPayload payload = ApiPayload.of("CatFacts", "{\"fact\":\"retried\"}");
+        long hash = deduplicator.contentHash(payload);
+
+        // the first write failed, so the record was never remembered
+        assertFalse(deduplicator.isDuplicate(payload, hash));
+        assertFalse(deduplicator.isDuplicate(payload, hash));
+        deduplicator.remember(payload, hash);
+        assertTrue(deduplicator.isDuplicate(payload, hash));
+    }
+
+    @Test
+    void isDuplicate_shouldCountInServiceMetrics() {
+        ServiceMetrics metrics = Metrics.service("DedupeMetricsService");
+        long checked = metrics.getDuplicatesChecked();
+        long dropped = metrics.getDuplicatesDropped();
+
+        isDuplicate(deduplicator, ApiPayload.of("DedupeMetricsService", "{\"a\":1}"));
+        isDuplicate(deduplicator, ApiPayload.of("DedupeMetricsService", "{\"a\":1}"));
+
+        assertEquals(checked + 2, metrics.getDuplicatesChecked());
+        assertEquals(dropped + 1, metrics.getDuplicatesDropped());
+    }
+}
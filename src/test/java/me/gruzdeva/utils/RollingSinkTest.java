@@ -0,0 +1,154 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void write_overSizeLimit_shouldStartNewSegments() throws Exception {
+        RollingSink sink = new RollingSink(tempDir, "output", "csv", 10, 0, ChannelSink::new);
+
+        sink.write(bytes("aaaa\n"));
+        sink.write(bytes("bbbb\n"));
+        sink.write(bytes("cccc\n"));
+        sink.write(List.of(bytes("dddd\n"), bytes("eeee\n"), bytes("ffff\n")));
+        sink.close();
+
+        assertEquals("aaaa\nbbbb\n", Files.readString(tempDir.resolve("output.00001.csv")));
+        assertEquals("cccc\ndddd\n", Files.readString(tempDir.resolve("output.00002.csv")));
+        assertEquals("eeee\nffff\n", Files.readString(tempDir.resolve("output.00003.csv")));
+        assertFalse(Files.exists(tempDir.resolve("output.00004.csv")));
+    }
+
+    @Test
+    void write_withHeaderRecords_shouldRepeatLastHeaderInNewSegments() throws Exception {
+        byte[] header = bytes("h\n");
+        byte[] extendedHeader = bytes("h,i\n");
+        RollingSink sink = new RollingSink(tempDir, "output", "csv", 6, 0, ChannelSink::new,
+                record -> record == header || record == extendedHeader);
+
+        sink.write(header);
+        sink.write(bytes("a\n"));
+        sink.write(bytes("b\n"));
+        sink.write(List.of(bytes("c\n"), extendedHeader, bytes("d,e\n")));
+        sink.write(bytes("f,g\n"));
+        sink.close();
+
+        assertEquals("h\na\nb\n", Files.readString(tempDir.resolve("output.00001.csv")));
+        assertEquals("h\nc\n", Files.readString(tempDir.resolve("output.00002.csv")));
+        assertEquals("h,i\nd,e\n", Files.readString(tempDir.resolve("output.00003.csv")));
+        assertEquals("h,i\nf,g\n", Files.readString(tempDir.resolve("output.00004.csv")));
+    }
+
+    @Test
+    void write_withNewHeaderAndNoLimits_shouldStartNewSegment() throws Exception {
+        byte[] header = bytes("h\n");
+        RollingSink sink = new RollingSink(tempDir, "output", "csv", 0, 0, ChannelSink::new,
+                record -> record[0] == 'h');
+
+        sink.write(header);
+        sink.write(bytes("a\n"));
+        sink.write(List.of(bytes("b\n"), bytes("h,i\n"), bytes("c,d\n")));
+        sink.close();
+
+        assertEquals("h\na\nb\n", Files.readString(tempDir.resolve("output.00001.csv")));
+        assertEquals("h,i\nc,d\n", Files.readString(tempDir.resolve("output.00002.csv")));
+        assertEquals(List.of(tempDir.resolve("output.00001.csv"), tempDir.resolve("output.00002.csv")),
+                sink.getSegments());
+    }
+
+    @Test
+    void write_recordLargerThanLimit_shouldGetItsOwnSegment() throws Exception {
+        RollingSink sink = new RollingSink(tempDir, "output", "csv", 4, 0, ChannelSink::new);
+
+        sink.write(bytes("a\n"));
+        sink.write(bytes("0123456789\n"));
+        sink.close();
+
+        assertEquals("a\n", Files.readString(tempDir.resolve("output.00001.csv")));
+        assertEquals("0123456789\n", Files.readString(tempDir.resolve("output.00002.csv")));
+    }
+
+    @Test
+    void write_afterInterval_shouldStartNewSegment() throws Exception {
+        RollingSink sink = new RollingSink(tempDir, "output", "csv", 0, 20, ChannelSink::new);
+
+        sink.write(bytes("first\n"));
+        Thread.sleep(50);
+        sink.write(bytes("second\n"));
+        sink.close();
+
+        assertEquals("first\n", Files.readString(tempDir.resolve("output.00001.csv")));
+        assertEquals("second\n", Files.readString(tempDir.resolve("output.00002.csv")));
+    }
+
+    @Test
+    void close_shouldSealSegmentsReadOnly() throws Exception {
+        RollingSink sink = new RollingSink(tempDir, "output", "csv", 5, 0, ChannelSink::new);
+
+        sink.write(bytes("1234\n"));
+        sink.write(bytes("5678\n"));
+        sink.close();
+
+        // checks the permission bits, isWritable() is always true for root
+        assertFalse(Files.getPosixFilePermissions(tempDir.resolve("output.00001.csv"))
+                .contains(PosixFilePermission.OWNER_WRITE));
+        assertFalse(Files.getPosixFilePermissions(tempDir.resolve("output.00002.csv"))
+                .contains(PosixFilePermission.OWNER_WRITE));
+    }
+
+    @Test
+    void constructor_shouldContinueAfterExistingSegments() throws Exception {
+        Files.writeString(tempDir.resolve("output.00007.csv"), "old\n");
+        Files.writeString(tempDir.resolve("output-Other.00009.csv"), "other\n");
+
+        RollingSink sink = new RollingSink(tempDir, "output", "csv", 0, 0, ChannelSink::new);
+        sink.write(bytes("new\n"));
+        sink.close();
+
+        assertEquals("old\n", Files.readString(tempDir.resolve("output.00007.csv")));
+        assertEquals("new\n", Files.readString(tempDir.resolve("output.00008.csv")));
+    }
+
+    @Test
+    void write_withGzipSegments_shouldProduceReadableArchives() throws Exception {
+        RollingSink sink = new RollingSink(tempDir, "output", "json.gz", 1024, 0, GzipSink::new);
+        String record = "{\"key\":\"value\"}\n";
+
+        for (int i = 0; i < 100; i++) {
+            sink.write(bytes(record));
+        }
+        sink.close();
+
+        String first = readGzip(tempDir.resolve("output.00001.json.gz"));
+        String second = readGzip(tempDir.resolve("output.00002.json.gz"));
+        assertTrue(first.length() <= 1024);
+        assertEquals(record.repeat(100), first + second);
+        assertTrue(Files.size(tempDir.resolve("output.00001.json.gz")) < first.length());
+    }
+
+    private static String readGzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
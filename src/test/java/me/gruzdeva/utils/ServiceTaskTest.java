@@ -0,0 +1,95 @@
+package me.gruzdeva.utils;
+
+import me.gruzdeva.api.ApiClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ServiceTaskTest {
+
+    private ServiceTask task;
+
+    @BeforeEach
+    void setUp() {
+        ApiClient apiClient = mock(ApiClient.class);
+        when(apiClient.getServiceName()).thenReturn("TestService");
+        task = new ServiceTask(apiClient, 1000, mock(DataProcessor.class), 500, 5000, 2.0, 1000, 2);
+    }
+
+    @Test
+    void constructor_shouldStartAtTimeout() {
+        assertEquals(1000, task.getInterval());
+    }
+
+    @Test
+    void onUnchanged_shouldBackOffAfterSuccessiveQuietPollsUpToMax() {
+        task.onUnchanged();
+        assertEquals(1000, task.getInterval());
+
+        task.onUnchanged();
+        assertEquals(2000, task.getInterval());
+        task.onError();
+        assertEquals(4000, task.getInterval());
+        task.onUnchanged();
+        assertEquals(5000, task.getInterval());
+    }
+
+    @Test
+    void onChanged_shouldSpeedUpAdditivelyDownToMin() {
+        task.onUnchanged();
+        task.onUnchanged();
+        task.onUnchanged();
+        assertEquals(4000, task.getInterval());
+
+        task.onChanged();
+        assertEquals(3000, task.getInterval());
+        task.onChanged();
+        task.onChanged();
+        task.onChanged();
+        assertEquals(500, task.getInterval());
+    }
+
+    @Test
+    void onChanged_shouldResetQuietPolls() {
+        task.onUnchanged();
+        task.onChanged();
+        task.onUnchanged();
+
+        assertEquals(500, task.getInterval());
+    }
+
+    @Test
+    void constructor_withoutAdaptiveSetting_shouldPollAdaptively() {
+        System.setProperty("polling.adaptive", "");
+        try {
+            ServiceTask configured = new ServiceTask(serviceClient("DefaultService"), 1000, mock(DataProcessor.class));
+
+            assertTrue(configured.getMaxInterval() > 1000);
+        } finally {
+            System.clearProperty("polling.adaptive");
+        }
+    }
+
+    @Test
+    void constructor_withAdaptiveDisabledForService_shouldKeepTimeout() {
+        System.setProperty("polling.FixedService.adaptive", "false");
+        try {
+            ServiceTask fixed = new ServiceTask(serviceClient("FixedService"), 1000, mock(DataProcessor.class));
+            ServiceTask other = new ServiceTask(serviceClient("OtherService"), 1000, mock(DataProcessor.class));
+
+            assertEquals(1000, fixed.getMinInterval());
+            assertEquals(1000, fixed.getMaxInterval());
+            assertTrue(other.getMaxInterval() > 1000);
+        } finally {
+            System.clearProperty("polling.FixedService.adaptive");
+        }
+    }
+
+    private static ApiClient serviceClient(String serviceName) {
+        ApiClient apiClient = mock(ApiClient.class);
+        when(apiClient.getServiceName()).thenReturn(serviceName);
+        return apiClient;
+    }
+}
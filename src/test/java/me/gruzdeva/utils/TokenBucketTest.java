@@ -0,0 +1,72 @@
+package me.gruzdeva.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void tryAcquire_shouldAllowBurstThenAskToWait() {
+        // one token per second
+        TokenBucket bucket = new TokenBucket(60, 3);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 900 && wait <= 1000, "wait was " + wait);
+    }
+
+    @Test
+    void tryAcquire_shouldRefillOverTime() throws Exception {
+        // one token per 50 ms
+        TokenBucket bucket = new TokenBucket(1200, 1);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+        Thread.sleep(60);
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void pause_shouldBlockUntilDelayWithoutBurstAfterwards() throws Exception {
+        TokenBucket bucket = new TokenBucket(1200, 5);
+
+        bucket.pause(100);
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 50 && wait <= 100, "wait was " + wait);
+
+        Thread.sleep(wait + 5);
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    void tryAcquire_fromManyThreads_shouldNotHandOutMoreThanBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 10);
+        AtomicInteger acquired = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    if (bucket.tryAcquire() == 0) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(10, acquired.get());
+    }
+}